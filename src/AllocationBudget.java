@@ -0,0 +1,140 @@
+/**
+ * {@link AllocationBudget}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steady state allocation check of the packet hot path. Every path is driven in this
+ * thread, warmed up and then measured with ThreadMXBean#getThreadAllocatedBytes; the
+ * bytes allocated per packet are compared with the budget of the path -
+ * 1.   receive:            buffer and datagram as the receiving loop allocates them,
+ *                          through the ingress queue to the worker
+ * 2.   decode unchanged:   decode and update, the update repeats what the table holds
+ * 3.   decode changed:     decode and update, every RTE changes the metric of its route
+ *                          (the table print is off, the snapshot for the queries is published)
+ * 4.   encode:             a 25 RTE response of the full table, per datagram
+ * 5.   send:               encode and send the datagram on a loopback socket
+ *
+ * The budgets are the measured figures plus some headroom, a path that starts allocating
+ * more fails the check. Lower a budget when a path gets cheaper.
+ *
+ * EXECUTING:
+ *      java AllocationBudget [packets per path]
+ *      exits with 1 if a path is over its budget
+ */
+public class AllocationBudget {
+    // bytes per packet
+    private static final long BUDGET_RECEIVE = 1_024;
+    private static final long BUDGET_DECODE_UNCHANGED = 7_500;
+    private static final long BUDGET_DECODE_CHANGED = 12_500;
+    private static final long BUDGET_ENCODE = 1_500;
+    private static final long BUDGET_SEND = 2_000;
+
+    private static final int RTES = RIPPacket.MAX_RTE_PER_PACKET;
+
+    private interface Path {
+        void run(int iteration) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int packets = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        PrintStream out = BenchSupport.silenceStdout();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!threads.isThreadAllocatedMemorySupported()) {
+            out.println("this JVM does not report allocated bytes per thread");
+            System.exit(1);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        RoverManager.getInstance().setRoverId("1");
+
+        InetAddress neighbor = InetAddress.getByName("192.0.2.1");
+        byte[][] updates = {
+                new RIPPacket().toByteArray(RIPPacket.COMMAND_RESPONSE, routes(2)),
+                new RIPPacket().toByteArray(RIPPacket.COMMAND_RESPONSE, routes(3))
+        };
+        IngressQueue ingressQueue = new IngressQueue(16, IngressQueue.POLICY_DROP_NEWEST);
+        RIPPacket unchanged = BenchSupport.newTable();
+        RIPPacket changed = BenchSupport.newTable();
+        RIPPacket full = BenchSupport.newTable();
+        new ParseReceivedPacketProcess(new DatagramPacket(updates[0], updates[0].length, neighbor, 520), null, full).run();
+        DatagramSocket sink = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        DatagramSocket sender = new DatagramSocket();
+
+        boolean isWithinBudget = true;
+        isWithinBudget &= check(out, threads, "receive", BUDGET_RECEIVE, packets, i -> {
+            // what ReceivingProcess does for every datagram, the kernel copy included
+            byte[] buffer = new byte[504];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            System.arraycopy(updates[0], 0, buffer, 0, updates[0].length);
+            packet.setAddress(neighbor);
+            packet.setPort(520);
+            packet.setLength(updates[0].length);
+            ingressQueue.offer(packet);
+            ingressQueue.take();
+        });
+        isWithinBudget &= check(out, threads, "decode unchanged", BUDGET_DECODE_UNCHANGED, packets, i ->
+                new ParseReceivedPacketProcess(new DatagramPacket(updates[0], updates[0].length, neighbor, 520), null, unchanged).run());
+        isWithinBudget &= check(out, threads, "decode changed", BUDGET_DECODE_CHANGED, packets, i ->
+                new ParseReceivedPacketProcess(new DatagramPacket(updates[i & 1], updates[i & 1].length, neighbor, 520), null, changed).run());
+        isWithinBudget &= check(out, threads, "encode", BUDGET_ENCODE, packets, i ->
+                full.toByteArrays(RIPPacket.COMMAND_RESPONSE));
+        isWithinBudget &= check(out, threads, "send", BUDGET_SEND, packets, i -> {
+            // what BroadcastingProcess does for every datagram
+            for(byte[] buff: full.toByteArrays(RIPPacket.COMMAND_RESPONSE)) {
+                sender.send(new DatagramPacket(buff, buff.length, sink.getLocalAddress(), sink.getLocalPort()));
+            }
+        });
+        sink.close();
+        sender.close();
+        out.println(isWithinBudget ? "all paths within budget" : "ALLOCATION BUDGET EXCEEDED");
+        out.flush();
+        System.exit(isWithinBudget ? 0 : 1);
+    }
+
+    /**
+     * Warm a path up, measure the bytes it allocates per packet and compare them with its budget
+     * @return  true if the path is within its budget
+     */
+    private static boolean check(PrintStream out, com.sun.management.ThreadMXBean threads, String name, long budget,
+                                 int packets, Path path) throws Exception {
+        long thread = Thread.currentThread().getId();
+        for(int i = 0; i < packets; i++) {
+            path.run(i);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for(int i = 0; i < packets; i++) {
+            path.run(i);
+        }
+        long perPacket = (threads.getThreadAllocatedBytes(thread) - before) / packets;
+        boolean isWithinBudget = perPacket <= budget;
+        out.printf("%-18s %7d bytes/packet | budget %7d | %s%n", name, perPacket, budget, isWithinBudget ? "ok" : "OVER BUDGET");
+        return isWithinBudget;
+    }
+
+    /**
+     * Return a full datagram worth of /24 routes with the given metric
+     */
+    private static List<RoutingTableEntry> routes(int metric) {
+        List<RoutingTableEntry> routes = new ArrayList<>();
+        for(int r = 0; r < RTES; r++) {
+            routes.add(BenchSupport.route(BenchSupport.network(r), 24, null, metric));
+        }
+        return routes;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * {@link BenchSupport}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * The pieces shared by the benchmarks and offline tools: a silent stdout, the synthetic
+ * routes they advertise and a routing table that does not print itself
+ */
+public class BenchSupport {
+
+    /**
+     * Replace stdout with a stream that discards everything, the rover prints its table
+     * on every change
+     * @return  the real stdout, for the report
+     */
+    public static PrintStream silenceStdout() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return out;
+    }
+
+    /**
+     * Return the r-th synthetic /24: 11.(r / 256).(r % 256).0
+     */
+    public static int network(int r) {
+        return (11 << 24) | (r << 8);
+    }
+
+    /**
+     * Return a route to the given network
+     * @param network       the network address as an int
+     * @param prefixLength  the prefix length
+     * @param neighbor      the next hop ("ip:port"), null for a route of the sender itself
+     * @param metric        the metric
+     */
+    public static RoutingTableEntry route(int network, int prefixLength, String neighbor, int metric) {
+        RoutingTableEntry entry = new RoutingTableEntry(RoutingTableEntry.ADDRESS_FAMILY_IP
+                , RoutingTableEntry.ROUTE_TAG
+                , Helper.parseIntToIpAddress(network)
+                , Helper.parseIntToSubnetMask(Helper.prefixLengthToMask(prefixLength))
+                , neighbor == null ? RoutingTableEntry.NEXT_HOP_SELF : Helper.parseNeighborAddress(neighbor)
+                , metric);
+        if(neighbor != null) {
+            entry.setNeighbor(neighbor);
+        }
+        return entry;
+    }
+
+    /**
+     * Return an empty routing table that does not print itself, so that the measurements
+     * cover the decode and the update only
+     */
+    public static RIPPacket newTable() {
+        RIPPacket table = new RIPPacket();
+        table.setPrintEnabled(false);
+        return table;
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * {@link CaptureReplay}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replays a {@link PacketCapture} ring file through the regular decode and routing table
+ * update ({@link ParseReceivedPacketProcess}) as fast as possible -
+ * 1.   verify: the datagrams the rover applied and the neighbor failures are applied to a
+ *      fresh table in the captured order; the datagrams that never reached the table are
+ *      skipped, they only tell which neighbors each interface heard. Whenever the capture holds a complete periodic broadcast, the RTEs
+ *      the rover sent are compared with the RTEs the replayed table exports at that point on
+ *      the same interface: with several interfaces, the routes learned from a neighbor heard
+ *      on it are left out (split horizon, see {@link RouterInterface}). The first divergence
+ *      and the result of the last comparison are reported per interface
+ * 2.   benchmark: the same records are replayed into fresh tables a number of rounds and
+ *      the achieved datagrams/sec and RTEs/sec are reported against the captured time span
+ *
+ * The local prefixes and summary ranges of the captured rover are taken from the capture.
+ * The datagrams are replayed in the order the live rover applied them. Flap damping depends
+ * on the wall clock and is off during the replay unless -Drip.damping is given.
+ *
+ * EXECUTING:
+ *      java CaptureReplay <capture file> [rounds]
+ *      exits with 1 if the last compared broadcast does not match
+ */
+public class CaptureReplay {
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.out.println("Please enter arguments as <capture file> [rounds]. Please refer to README.txt for reference.");
+            return;
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        PacketCapture.Capture capture = PacketCapture.read(args[0]);
+        List<PacketCapture.Record> records = capture.getRecords();
+        PrintStream out = BenchSupport.silenceStdout();
+
+        int[] kinds = new int[5];
+        for(PacketCapture.Record record: records) {
+            kinds[record.getKind()]++;
+        }
+        double span = records.isEmpty() ? 0 : (records.get(records.size() - 1).getNanos() - records.get(0).getNanos()) / 1e9;
+        out.printf("capture of %d records over %.1f s: %d received, %d applied, %d sent periodic, %d sent triggered, %d neighbors down%s%n",
+                records.size(), span, kinds[PacketCapture.KIND_RECEIVED], kinds[PacketCapture.KIND_APPLIED], kinds[PacketCapture.KIND_SENT_PERIODIC],
+                kinds[PacketCapture.KIND_SENT_TRIGGERED], kinds[PacketCapture.KIND_NEIGHBOR_DOWN],
+                capture.hasWrapped() ? " (the ring wrapped, the oldest records are lost)" : "");
+        out.println("local prefixes '" + capture.getLocalPrefixes() + "', summary ranges '" + capture.getSummaryRanges()
+                + "', interfaces " + capture.getInterfaces());
+
+        // become the captured rover
+        System.setProperty(RouterConfig.PROPERTY_LOCAL_PREFIXES, capture.getLocalPrefixes());
+        System.setProperty(RouterConfig.PROPERTY_SUMMARY_RANGES, capture.getSummaryRanges());
+        if(System.getProperty(RouterConfig.PROPERTY_DAMPING) == null) {
+            System.setProperty(RouterConfig.PROPERTY_DAMPING, "false");
+        }
+        RoverManager.getInstance().setRoverId("replay");
+
+        boolean isMatching = verify(out, records, capture.getInterfaces());
+        benchmark(out, records, rounds, span);
+        out.flush();
+        System.exit(isMatching ? 0 : 1);
+    }
+
+    /**
+     * Replay the capture once and compare the table with every complete periodic broadcast
+     * of every interface
+     * @param interfaces    the names of the captured interfaces, by index
+     * @return              true unless the last compared broadcast of an interface differs
+     */
+    private static boolean verify(PrintStream out, List<PacketCapture.Record> records, List<String> interfaces) {
+        RIPPacket table = BenchSupport.newTable();
+        // the state of each interface: the neighbors heard on it and the broadcast being collected
+        List<Set<String>> neighbors = new ArrayList<>();
+        List<List<ByteBuffer>> sent = new ArrayList<>();
+        int[] expectedPart = new int[interfaces.size()];
+        int[] compared = new int[interfaces.size()];
+        int[] matched = new int[interfaces.size()];
+        boolean[] isLastMatching = new boolean[interfaces.size()];
+        PacketCapture.Record[] firstDivergence = new PacketCapture.Record[interfaces.size()];
+        for(int i = 0; i < interfaces.size(); i++) {
+            neighbors.add(new HashSet<>());
+            sent.add(new ArrayList<>());
+            expectedPart[i] = -1;
+            isLastMatching[i] = true;
+        }
+        for(PacketCapture.Record record: records) {
+            int id = record.getInterfaceId();
+            if(id >= interfaces.size()) {
+                continue;
+            }
+            switch (record.getKind()) {
+                case PacketCapture.KIND_RECEIVED:
+                    // the interface hears every sender, whether or not its datagram reached the table
+                    neighbors.get(id).add(Helper.parseNeighbor(record.getAddress(), record.getPort()));
+                    break;
+                case PacketCapture.KIND_APPLIED:
+                    apply(table, record);
+                    break;
+                case PacketCapture.KIND_NEIGHBOR_DOWN:
+                    for(Set<String> heard: neighbors) {
+                        heard.remove(new String(record.getData(), StandardCharsets.US_ASCII));
+                    }
+                    apply(table, record);
+                    break;
+                case PacketCapture.KIND_SENT_PERIODIC:
+                    if(record.getPart() == 0) {
+                        sent.get(id).clear();
+                        expectedPart[id] = 0;
+                    } else if(record.getPart() != expectedPart[id]) {
+                        // the start of this broadcast was overwritten
+                        expectedPart[id] = -1;
+                        break;
+                    }
+                    sent.get(id).addAll(toRTEs(record.getData(), record.getData().length));
+                    expectedPart[id]++;
+                    if(expectedPart[id] == record.getParts()) {
+                        compared[id]++;
+                        isLastMatching[id] = toRTEs(table, interfaces.size() > 1 ? neighbors.get(id) : Collections.emptySet())
+                                .equals(sort(sent.get(id)));
+                        if(isLastMatching[id]) {
+                            matched[id]++;
+                        } else if(firstDivergence[id] == null) {
+                            firstDivergence[id] = record;
+                        }
+                        expectedPart[id] = -1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        boolean isMatching = true;
+        for(int i = 0; i < interfaces.size(); i++) {
+            String name = interfaces.get(i);
+            if(compared[i] == 0) {
+                out.println("verify " + name + ": no complete periodic broadcast in the capture, nothing to compare");
+                continue;
+            }
+            out.printf("verify %s: %d of %d broadcasts match the replayed table, the last one %s%n",
+                    name, matched[i], compared[i], isLastMatching[i] ? "matches" : "DIFFERS");
+            if(firstDivergence[i] != null) {
+                out.printf("verify %s: first divergence at record %d, %.3f s into the capture%n",
+                        name, firstDivergence[i].getSequence(), firstDivergence[i].getNanos() / 1e9);
+            }
+            isMatching &= isLastMatching[i];
+        }
+        return isMatching;
+    }
+
+    /**
+     * Replay the capture into fresh tables and report the rate
+     */
+    private static void benchmark(PrintStream out, List<PacketCapture.Record> records, int rounds, double span) {
+        List<PacketCapture.Record> workload = new ArrayList<>();
+        long rtes = 0;
+        for(PacketCapture.Record record: records) {
+            if(record.getKind() == PacketCapture.KIND_APPLIED) {
+                workload.add(record);
+                rtes += Math.max(0, (record.getData().length - 4) / 20);
+            } else if(record.getKind() == PacketCapture.KIND_NEIGHBOR_DOWN) {
+                workload.add(record);
+            }
+        }
+        if(workload.isEmpty()) {
+            return;
+        }
+        for(int round = 1; round <= rounds; round++) {
+            RIPPacket table = BenchSupport.newTable();
+            long start = System.nanoTime();
+            for(PacketCapture.Record record: workload) {
+                apply(table, record);
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            out.printf("replay round %d: %d records in %.3f s | %10.0f datagrams/s | %10.0f RTEs/s | %.1fx the captured pace%n",
+                    round, workload.size(), elapsed, workload.size() / elapsed, rtes / elapsed, span / elapsed);
+        }
+    }
+
+    /**
+     * Apply a received datagram or a neighbor failure to the table
+     */
+    private static void apply(RIPPacket table, PacketCapture.Record record) {
+        if(record.getKind() == PacketCapture.KIND_NEIGHBOR_DOWN) {
+            table.markAsDead(new String(record.getData(), StandardCharsets.US_ASCII));
+            return;
+        }
+        byte[] data = record.getData();
+        // the decoder expects a full size buffer, like the one it gets from the socket
+        byte[] buffer = new byte[Math.max(504, data.length)];
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        DatagramPacket packet = new DatagramPacket(buffer, data.length, record.getAddress(), record.getPort());
+        new ParseReceivedPacketProcess(packet, null, table).run();
+    }
+
+    /**
+     * Return the RTEs the table would advertise now on an interface, sorted
+     * @param neighbors the neighbors heard on the interface, left out by split horizon
+     */
+    private static List<ByteBuffer> toRTEs(RIPPacket table, Set<String> neighbors) {
+        List<ByteBuffer> rtes = new ArrayList<>();
+        if(table.isEmpty()) {
+            return rtes;
+        }
+        for(byte[] datagram: table.toResponseByteArrays(RouterInterface.filter(table.getExportedList(), neighbors))) {
+            rtes.addAll(toRTEs(datagram, datagram.length));
+        }
+        return sort(rtes);
+    }
+
+    /**
+     * Split the RTEs out of a response, a request carries none
+     */
+    private static List<ByteBuffer> toRTEs(byte[] datagram, int length) {
+        List<ByteBuffer> rtes = new ArrayList<>();
+        if(length < 4 || datagram[0] != Byte.parseByte(RIPPacket.COMMAND_RESPONSE)) {
+            return rtes;
+        }
+        for(int i = 4; i + 20 <= length; i += 20) {
+            rtes.add(ByteBuffer.wrap(datagram, i, 20).slice());
+        }
+        return rtes;
+    }
+
+    private static List<ByteBuffer> sort(List<ByteBuffer> rtes) {
+        List<ByteBuffer> sorted = new ArrayList<>(rtes);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * {@link ConvergenceBenchmark}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how a neighbor failure is handled, before and after the next hop index -
+ * 1.   table work: the cost of finding the routes of one failed neighbor in a large table,
+ *      with a full scan of the table (before) against a walk of the next hop index over the
+ *      k dependent routes (after), and the whole of {@link RIPPacket#markAsDead}: the table
+ *      work under the lock and the snapshot published after it, with the k poisoned routes
+ * 2.   convergence: an in-process rover learns routes from a synthetic neighbor, the neighbor
+ *      is declared dead and a listener on the multicast group times how long it takes until
+ *      the poison reaches the wire, with periodic updates only (before) and with the
+ *      triggered update (after)
+ *
+ * EXECUTING:
+ *      java ConvergenceBenchmark [routes] [neighbors] [trials] [port]
+ */
+public class ConvergenceBenchmark {
+    private static final String GROUP = "224.0.0.9";
+
+    public static void main(String[] args) throws Exception {
+        int routes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int neighbors = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int trials = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 5700;
+        // every trial flaps the same routes, keep them from being suppressed
+        System.setProperty(RouterConfig.PROPERTY_DAMPING, "false");
+        PrintStream out = BenchSupport.silenceStdout();
+
+        measureTableWork(out, routes, neighbors);
+        measureConvergence(out, trials, port);
+        out.flush();
+        System.exit(0);
+    }
+
+    /**
+     * Time the invalidation of one neighbor's routes in a table of the given size
+     */
+    private static void measureTableWork(PrintStream out, int routes, int neighbors) {
+        RIPPacket table = BenchSupport.newTable();
+        for(int r = 0; r < routes; r++) {
+            table.addEntry(BenchSupport.route(BenchSupport.network(r), 24, "192.0.2.1:" + (r % neighbors), 2));
+        }
+        table.setTriggeredUpdateEnabled(false);
+        table.invalidateSnapshot();
+        table.publishSnapshot();
+
+        int dependent = 0;
+        long scanNanos = 0;
+        long indexNanos = 0;
+        long markNanos = 0;
+        for(int n = 0; n < neighbors; n++) {
+            String neighbor = "192.0.2.1:" + n;
+            // before: find the dependent routes with a scan of the whole table
+            long start = System.nanoTime();
+            List<RoutingTableEntry> found = new ArrayList<>();
+            for(RoutingTableEntry entry: table.getmList()) {
+                if(entry.getEqualCostNeighbors().contains(neighbor)) {
+                    found.add(entry);
+                }
+            }
+            scanNanos += System.nanoTime() - start;
+            dependent += found.size();
+            // after: walk the next hop index
+            start = System.nanoTime();
+            found = new ArrayList<>(table.getEntriesVia(neighbor));
+            indexNanos += System.nanoTime() - start;
+            // the failure as handled by the rover
+            start = System.nanoTime();
+            table.markAsDead(neighbor);
+            markNanos += System.nanoTime() - start;
+        }
+        out.printf("table of %d routes via %d neighbors, %d routes per neighbor%n", routes, neighbors, dependent / neighbors);
+        out.printf("  find the routes of one neighbor: full scan %9.1f us | next hop index %9.1f us%n",
+                scanNanos / 1e3 / neighbors, indexNanos / 1e3 / neighbors);
+        out.printf("  markAsDead, snapshot published %9.1f us%n", markNanos / 1e3 / neighbors);
+    }
+
+    /**
+     * Time from declaring a neighbor dead until its poisoned routes are seen on the wire
+     */
+    private static void measureConvergence(PrintStream out, int trials, int port) throws Exception {
+        RoverManager.getInstance().setRoverId("1");
+        MyThreadPoolExecutorService.getService().execute(new MainRouterProcess(GROUP, String.valueOf(port)));
+        RIPPacket table = RoverManager.getInstance().getmRIPPacket();
+
+        MulticastSocket listener = new MulticastSocket(port);
+        listener.joinGroup(new InetSocketAddress(InetAddress.getByName(GROUP), port), null);
+        listener.setSoTimeout(100);
+        // the listener shares the router port, so the neighbor talks to the group as well
+        DatagramSocket neighborSocket = new DatagramSocket();
+        List<RoutingTableEntry> advertised = new ArrayList<>();
+        advertised.add(new RoutingTableEntry(RoutingTableEntry.ADDRESS_FAMILY_IP
+                , RoutingTableEntry.ROUTE_TAG, "172.31.0.0", RoutingTableEntry.SUBNET_MASK, RoutingTableEntry.NEXT_HOP_SELF, 1));
+        byte[] buff = new RIPPacket().toByteArray(RIPPacket.COMMAND_RESPONSE, advertised);
+        Random random = new Random(7);
+
+        for(boolean isTriggered: new boolean[]{false, true}) {
+            table.setTriggeredUpdateEnabled(isTriggered);
+            long total = 0;
+            long worst = 0;
+            for(int trial = 0; trial < trials; trial++) {
+                // (re)learn the route and wait for it to be installed
+                do {
+                    neighborSocket.send(new DatagramPacket(buff, buff.length, InetAddress.getByName(GROUP), port));
+                    Thread.sleep(20);
+                } while(table.findEntry("172.31.0.0", RoutingTableEntry.SUBNET_MASK) == null
+                        || table.findEntry("172.31.0.0", RoutingTableEntry.SUBNET_MASK).getMetric() >= RIPPacket.METRIC_UNREACHABLE);
+                // fail at a random point of the broadcasting interval
+                Thread.sleep(random.nextInt(5000));
+                drain(listener);
+                String neighbor = table.findEntry("172.31.0.0", RoutingTableEntry.SUBNET_MASK).getNeighbor();
+                long start = System.nanoTime();
+                table.markAsDead(neighbor);
+                awaitPoison(listener);
+                long elapsed = System.nanoTime() - start;
+                total += elapsed;
+                worst = Math.max(worst, elapsed);
+            }
+            out.printf("  failure to poison on the wire, %s: mean %8.1f ms | max %8.1f ms (%d trials)%n",
+                    isTriggered ? "triggered update" : "periodic only   ", total / 1e6 / trials, worst / 1e6, trials);
+        }
+    }
+
+    private static void drain(DatagramSocket listener) throws Exception {
+        byte[] buffer = new byte[504];
+        try {
+            while(true) {
+                listener.receive(new DatagramPacket(buffer, buffer.length));
+            }
+        } catch (SocketTimeoutException ex) {
+            // nothing left
+        }
+    }
+
+    /**
+     * Wait for a datagram advertising 172.31.0.0 with metric 16
+     */
+    private static void awaitPoison(DatagramSocket listener) throws Exception {
+        byte[] buffer = new byte[504];
+        while(true) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                listener.receive(packet);
+            } catch (SocketTimeoutException ex) {
+                continue;
+            }
+            for(int i = 4; i + 20 <= packet.getLength(); i += 20) {
+                if((buffer[i + 4] & 0xFF) == 172 && (buffer[i + 5] & 0xFF) == 31
+                        && (buffer[i + 19] & 0xFF) == RIPPacket.METRIC_UNREACHABLE) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * {@link FlapDamping}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+/**
+ * Penalty based route flap damping (RFC 2439 adapted to RIP timescales). Each route
+ * carries a penalty that decays exponentially with the configured half life -
+ * 1.   every time a route goes from reachable to unreachable it collects a penalty of 1000
+ * 2.   once the penalty reaches the suppress threshold the route is suppressed: it is
+ *      advertised as unreachable and not used for forwarding, and its coming back does not
+ *      trigger a print. The poison of the flap that suppressed it is still sent
+ * 3.   the route is reused once its penalty has decayed below the reuse threshold or it has
+ *      been suppressed for the maximum suppression time
+ *
+ * All state lives in primitive fields of the {@link RoutingTableEntry}, the decay is computed
+ * lazily whenever the route is looked at. Callers hold the lock of the routing table.
+ * Configured with -Drip.damping=false to turn it off, and -Drip.damping.halfLife (s, default 15),
+ * -Drip.damping.suppress (default 2000), -Drip.damping.reuse (default 750),
+ * -Drip.damping.maxSuppress (s, default 60)
+ */
+public class FlapDamping {
+    public static final double PENALTY_PER_FLAP = 1000;
+    private static FlapDamping flapDamping = null;
+
+    private final boolean isEnabled;
+    private final long halfLifeMillis;
+    private final double suppressThreshold;
+    private final double reuseThreshold;
+    private final long maxSuppressMillis;
+    // the penalty that decays to the reuse threshold in exactly the maximum suppression time
+    private final double maxPenalty;
+
+    public static FlapDamping getInstance() {
+        if(flapDamping == null) {
+            flapDamping = new FlapDamping(
+                    !"false".equalsIgnoreCase(System.getProperty(RouterConfig.PROPERTY_DAMPING)),
+                    RouterConfig.getInt(RouterConfig.PROPERTY_DAMPING_HALF_LIFE, 15) * 1000L,
+                    RouterConfig.getInt(RouterConfig.PROPERTY_DAMPING_SUPPRESS, 2000),
+                    RouterConfig.getInt(RouterConfig.PROPERTY_DAMPING_REUSE, 750),
+                    RouterConfig.getInt(RouterConfig.PROPERTY_DAMPING_MAX_SUPPRESS, 60) * 1000L);
+        }
+        return flapDamping;
+    }
+
+    public FlapDamping(boolean isEnabled, long halfLifeMillis, double suppressThreshold, double reuseThreshold, long maxSuppressMillis) {
+        this.isEnabled = isEnabled && halfLifeMillis > 0;
+        this.halfLifeMillis = Math.max(1, halfLifeMillis);
+        this.suppressThreshold = suppressThreshold;
+        this.reuseThreshold = reuseThreshold;
+        this.maxSuppressMillis = maxSuppressMillis;
+        this.maxPenalty = reuseThreshold * Math.pow(2, (double)maxSuppressMillis / this.halfLifeMillis);
+    }
+
+    /**
+     * Charge a route for going unreachable and suppress it if it crossed the threshold
+     * @param entry the flapping route
+     */
+    public void recordFlap(RoutingTableEntry entry) {
+        if(!isEnabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        RouterStatistics.getInstance().getRouteFlaps().increment();
+        double penalty = Math.min(maxPenalty, decay(entry, now) + PENALTY_PER_FLAP);
+        entry.setPenalty(penalty);
+        entry.setPenaltyUpdatedAt(now);
+        if(entry.getSuppressedSince() < 0 && penalty >= suppressThreshold) {
+            entry.setSuppressedSince(now);
+            RouterStatistics.getInstance().getRoutesSuppressed().increment();
+            Log.router(RoverManager.getInstance().getFullRoverId() + ": "
+                    + Helper.parseSubnetMaskToCIDR(entry.getAddress(), entry.getSubnetMask())
+                    + " is flapping, suppressed (penalty " + (int)penalty + ")");
+        }
+    }
+
+    /**
+     * Return true if the route is suppressed. A suppressed route whose penalty has decayed
+     * below the reuse threshold, or that reached the maximum suppression time, is released
+     * @param entry the route
+     */
+    public boolean isSuppressed(RoutingTableEntry entry) {
+        if(entry.getSuppressedSince() < 0) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if(decay(entry, now) >= reuseThreshold && now - entry.getSuppressedSince() < maxSuppressMillis) {
+            return true;
+        }
+        entry.setSuppressedSince(-1);
+        RouterStatistics.getInstance().getRoutesSuppressed().decrement();
+        Log.router(RoverManager.getInstance().getFullRoverId() + ": "
+                + Helper.parseSubnetMaskToCIDR(entry.getAddress(), entry.getSubnetMask()) + " has settled, reused");
+        return false;
+    }
+
+    /**
+     * Return the penalty of a route decayed to the given time
+     */
+    private double decay(RoutingTableEntry entry, long now) {
+        if(entry.getPenalty() == 0) {
+            return 0;
+        }
+        return entry.getPenalty() * Math.pow(2, -(double)(now - entry.getPenaltyUpdatedAt()) / halfLifeMillis);
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * {@link HelloBenchmark}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Benchmark of the hello based neighbor liveness ({@link NeighborLiveness}). A rover runs in
+ * this process with hellos enabled, a number of emulated neighbors (one loopback socket each)
+ * advertise one route every 5 s like a regular rover and send hellos at the same interval -
+ * 1.   cost: the CPU time of the rover threads is measured over a window without hellos and
+ *      over a window with every neighbor sending hellos, the difference per hello received is
+ *      the cost of the fast path and of the deadline sweep. For scale, the cost of sending the
+ *      full table at the hello interval instead (encode time and bytes on the wire) is reported
+ * 2.   detection: neighbors stop sending one at a time, the time from their last hello until
+ *      their route is unreachable in the table is reported against interval x multiplier;
+ *      then a tenth of the neighbors stop at once. Routes of live neighbors that went
+ *      unreachable are reported as false detections
+ *
+ * EXECUTING:
+ *      java HelloBenchmark [neighbors] [interval ms] [multiplier] [trials] [port]
+ */
+public class HelloBenchmark {
+    private static final String GROUP = "224.0.0.9";
+    private static final int WINDOW_IN_SECONDS = 5;
+    private static final int UPDATE_INTERVAL_IN_MILLIS = 5000;
+
+    private static volatile boolean isHelloEnabled = false;
+
+    public static void main(String[] args) throws Exception {
+        int neighbors = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int interval = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int multiplier = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int trials = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int port = args.length > 4 ? Integer.parseInt(args[4]) : 5800;
+        System.setProperty(RouterConfig.PROPERTY_HELLO_INTERVAL, String.valueOf(interval));
+        System.setProperty(RouterConfig.PROPERTY_HELLO_MULTIPLIER, String.valueOf(multiplier));
+        PrintStream out = BenchSupport.silenceStdout();
+
+        RoverManager.getInstance().setRoverId("1");
+        MyThreadPoolExecutorService.getService().execute(new MainRouterProcess(GROUP, String.valueOf(port)));
+        RIPPacket table = RoverManager.getInstance().getmRIPPacket();
+
+        // the neighbors, neighbor i advertises 11.(i / 256).(i % 256).0/24
+        InetAddress rover = InetAddress.getLoopbackAddress();
+        DatagramSocket[] sockets = new DatagramSocket[neighbors];
+        byte[][] updates = new byte[neighbors][];
+        for(int i = 0; i < neighbors; i++) {
+            sockets[i] = new DatagramSocket(0, rover);
+            updates[i] = new RIPPacket().toByteArray(RIPPacket.COMMAND_RESPONSE,
+                    Collections.singletonList(BenchSupport.route(BenchSupport.network(i), 24, null, 1)));
+        }
+        byte[] hello = NeighborLiveness.toHello(interval, multiplier);
+        AtomicIntegerArray isAlive = new AtomicIntegerArray(neighbors);
+        AtomicLongArray lastHello = new AtomicLongArray(neighbors);
+        for(int i = 0; i < neighbors; i++) {
+            isAlive.set(i, 1);
+        }
+        Thread sender = new Thread(() -> {
+            long nextRound = System.nanoTime();
+            long nextUpdate = nextRound;
+            try {
+                while(true) {
+                    boolean isUpdateDue = System.nanoTime() - nextUpdate >= 0;
+                    for(int i = 0; i < neighbors; i++) {
+                        if(isAlive.get(i) == 0) {
+                            continue;
+                        }
+                        // the neighbors are not in step, spread them over the interval
+                        long slot = nextRound + i * (interval * 1_000_000L / neighbors) - System.nanoTime();
+                        if(slot > 0) {
+                            LockSupport.parkNanos(slot);
+                        }
+                        if(isUpdateDue) {
+                            sockets[i].send(new DatagramPacket(updates[i], updates[i].length, rover, port));
+                        }
+                        if(isHelloEnabled) {
+                            sockets[i].send(new DatagramPacket(hello, hello.length, rover, port));
+                            lastHello.set(i, System.nanoTime());
+                        }
+                    }
+                    if(isUpdateDue) {
+                        nextUpdate += UPDATE_INTERVAL_IN_MILLIS * 1_000_000L;
+                    }
+                    nextRound += interval * 1_000_000L;
+                    long sleep = nextRound - System.nanoTime();
+                    if(sleep > 0) {
+                        Thread.sleep(sleep / 1_000_000, (int)(sleep % 1_000_000));
+                    }
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }, "neighbors");
+        sender.setDaemon(true);
+        sender.start();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while(table.getSnapshot().getRoutes().size() < neighbors && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        out.printf("%d neighbors, one route each (%d learned), hello every %d ms, down after %d missed (%d ms)%n",
+                neighbors, table.getSnapshot().getRoutes().size(), interval, multiplier, interval * multiplier);
+
+        // 1. cost
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<Long> excluded = Arrays.asList(Thread.currentThread().getId(), sender.getId());
+        Thread.sleep(1000);
+        long cpu = roverCpuTime(threads, excluded);
+        Thread.sleep(WINDOW_IN_SECONDS * 1000L);
+        double withoutHellos = (roverCpuTime(threads, excluded) - cpu) / 1e6 / WINDOW_IN_SECONDS;
+        isHelloEnabled = true;
+        Thread.sleep(1000);
+        long hellos = RouterStatistics.getInstance().getHellosReceived().sum();
+        cpu = roverCpuTime(threads, excluded);
+        Thread.sleep(WINDOW_IN_SECONDS * 1000L);
+        double withHellos = (roverCpuTime(threads, excluded) - cpu) / 1e6 / WINDOW_IN_SECONDS;
+        double hellosPerSecond = (RouterStatistics.getInstance().getHellosReceived().sum() - hellos) / (double)WINDOW_IN_SECONDS;
+        out.printf("rover cpu: without hellos %6.1f ms/s | with hellos %6.1f ms/s | %.0f hellos/s | %.2f us per hello%n",
+                withoutHellos, withHellos, hellosPerSecond, (withHellos - withoutHellos) * 1e3 / Math.max(1, hellosPerSecond));
+
+        int encodes = 200;
+        List<byte[]> datagrams = table.toByteArrays(RIPPacket.COMMAND_RESPONSE);
+        long start = System.nanoTime();
+        for(int i = 0; i < encodes; i++) {
+            datagrams = table.toByteArrays(RIPPacket.COMMAND_RESPONSE);
+        }
+        double encodeMillis = (System.nanoTime() - start) / 1e6 / encodes;
+        int bytes = 0;
+        for(byte[] datagram: datagrams) {
+            bytes += datagram.length + 28;
+        }
+        double perSecond = 1000.0 / interval;
+        out.printf("sent per rover per second: hellos %d datagrams %6d bytes | full table at the same interval %d datagrams %8.0f bytes, %.2f ms encoding%n",
+                Math.round(perSecond), Math.round(perSecond * (NeighborLiveness.HELLO_LENGTH + 28)),
+                Math.round(perSecond * datagrams.size()), perSecond * bytes, perSecond * encodeMillis);
+
+        // 2. detection, one neighbor at a time
+        List<Double> latencies = new ArrayList<>();
+        int killed = 0;
+        for(int t = 0; t < trials && killed < neighbors; t++, killed++) {
+            int neighbor = killed;
+            isAlive.set(neighbor, 0);
+            Double latency = awaitUnreachable(table, neighbor, lastHello, 20L * interval * multiplier);
+            if(latency != null) {
+                latencies.add(latency);
+            }
+            // do not fail in step with the hello timer
+            Thread.sleep(interval + (t * 37) % interval);
+        }
+        Collections.sort(latencies);
+        if(!latencies.isEmpty()) {
+            double sum = 0;
+            for(double latency: latencies) {
+                sum += latency;
+            }
+            out.printf("detection after the last hello: mean %6.1f ms | min %6.1f ms | max %6.1f ms | %d of %d detected (bound %d ms, the 10 s timeout alone takes 10-20 s)%n",
+                    sum / latencies.size(), latencies.get(0), latencies.get(latencies.size() - 1), latencies.size(), trials, interval * multiplier);
+        }
+
+        // a tenth of the neighbors at once
+        int burst = Math.min(neighbors - killed, Math.max(1, neighbors / 10));
+        long failedAt = System.nanoTime();
+        for(int i = killed; i < killed + burst; i++) {
+            isAlive.set(i, 0);
+        }
+        double slowest = 0;
+        int detected = 0;
+        for(int i = killed; i < killed + burst; i++) {
+            Double latency = awaitUnreachable(table, i, null, 20L * interval * multiplier);
+            if(latency != null) {
+                detected++;
+                slowest = Math.max(slowest, (System.nanoTime() - failedAt) / 1e6);
+            }
+        }
+        killed += burst;
+        out.printf("%d neighbors failing at once: %d detected, the last after %.1f ms%n", burst, detected, slowest);
+
+        int falseDetections = 0;
+        int unknown = 0;
+        TableSnapshot snapshot = table.getSnapshot();
+        for(int i = killed; i < neighbors; i++) {
+            TableSnapshot.Route route = snapshot.get(BenchSupport.network(i), 24);
+            if(route == null) {
+                unknown++;
+            } else if(!route.isUsable()) {
+                falseDetections++;
+            }
+        }
+        out.printf("false detections among the %d live neighbors: %d%s%n", neighbors - killed, falseDetections,
+                unknown > 0 ? " (" + unknown + " routes never learned, their updates were dropped)" : "");
+        out.flush();
+        System.exit(0);
+    }
+
+    /**
+     * Wait until the route of the neighbor is unreachable
+     * @param lastHello the time of the last hello of every neighbor, null to return 0 on detection
+     * @return          the time (ms) from the last hello of the neighbor, null if it was not detected in time
+     */
+    private static Double awaitUnreachable(RIPPacket table, int neighbor, AtomicLongArray lastHello, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(System.currentTimeMillis() < deadline) {
+            TableSnapshot.Route route = table.getSnapshot().get(BenchSupport.network(neighbor), 24);
+            if(route != null && route.getMetric() >= RIPPacket.METRIC_UNREACHABLE) {
+                long now = System.nanoTime();
+                return lastHello == null ? 0.0 : (now - lastHello.get(neighbor)) / 1e6;
+            }
+            Thread.sleep(1);
+        }
+        return null;
+    }
+
+    /**
+     * Return the CPU time (ns) of every thread of this process but the given ones
+     */
+    private static long roverCpuTime(ThreadMXBean threads, List<Long> excluded) {
+        long total = 0;
+        for(long id: threads.getAllThreadIds()) {
+            if(!excluded.contains(id)) {
+                total += Math.max(0, threads.getThreadCpuTime(id));
+            }
+        }
+        return total;
+    }
+}
@@ -18,10 +18,6 @@ import java.net.UnknownHostException;
 
 public class Helper {
 
-    public static String parseNetworkAsIpAddress(String nextHop) {
-        return RoverManager.getInstance().getIpAddressMap().getOrDefault(nextHop, nextHop);
-    }
-
     public static class BitwiseManager {
         /**
          * Helper method that uses bitwise operators to perform
@@ -59,10 +55,53 @@ public class Helper {
     }
 
     /**
-     * Parse sender address
+     * Return the identity of a neighboring rover. A rover is identified by the source
+     * address and port of its datagrams, which stays unique even when several rovers
+     * share one host
+     * @param address   the datagram source address
+     * @param port      the datagram source port
+     * @return          the neighbor as "ip:port"
      */
-    public static String parseSenderAddress(String sender)  {
-        return "10.0." + sender + ".0";
+    public static String parseNeighbor(InetAddress address, int port) {
+        return address.getHostAddress() + ":" + port;
+    }
+
+    /**
+     * Return a neighbor identity packed into a long, for the lookups done on the receiving
+     * thread. The hash code of an IPv4 address is the address itself, so that nothing is
+     * allocated; IPv6 neighbors are told apart by their hash code only
+     * @param address   the datagram source address
+     * @param port      the datagram source port
+     * @return          (address << 16) | port
+     */
+    public static long neighborKey(InetAddress address, int port) {
+        return ((address.hashCode() & 0xFFFFFFFFL) << 16) | port;
+    }
+
+    /**
+     * Return the IP address part of a neighbor identity ("ip:port")
+     */
+    public static String parseNeighborAddress(String neighbor) {
+        int colon = neighbor.lastIndexOf(':');
+        return colon < 0 ? neighbor : neighbor.substring(0, colon);
+    }
+
+    /**
+     * Return a well mixed hash of the 5-tuple of a flow, used to pick one of the
+     * equal cost next hops so that all packets of a flow take the same path
+     */
+    public static int flowHash(String sourceIp, String destinationIp, int protocol, int sourcePort, int destinationPort) {
+        int h = parseIpAddressToInt(sourceIp);
+        h = h * 31 + parseIpAddressToInt(destinationIp);
+        h = h * 31 + protocol;
+        h = h * 31 + ((sourcePort << 16) | (destinationPort & 0xFFFF));
+        // murmur3 finalizer
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
     }
 
     /**
@@ -106,4 +145,107 @@ public class Helper {
         }
         return ip + "/" + cidr;
     }
+
+    /**
+     * Return the 32 bit integer equivalent of a dotted decimal IPv4 address
+     * @param ip    the ip address (XX.X.X.Y)
+     * @return      the address packed into an int, most significant octet first
+     */
+    public static int parseIpAddressToInt(String ip) {
+        // scanned in place, this runs for every RTE that is encoded
+        int result = 0;
+        int octets = 0;
+        int octet = -1;
+        for(int x = 0; x <= ip.length(); x++) {
+            char c = x < ip.length() ? ip.charAt(x) : '.';
+            if(c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if(octet > 0xFF) {
+                    throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
+                }
+            } else if(c == '.' && octet >= 0 && octets < 4) {
+                result = (result << 8) | octet;
+                octets++;
+                octet = -1;
+            } else {
+                throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
+            }
+        }
+        if(octets != 4) {
+            throw new IllegalArgumentException("Invalid IPv4 address: " + ip);
+        }
+        return result;
+    }
+
+    /**
+     * Return the dotted decimal equivalent of a 32 bit IPv4 address
+     * @param ip    the packed address
+     * @return      the address as XX.X.X.Y
+     */
+    public static String parseIntToIpAddress(int ip) {
+        return ((ip >>> 24) & 0xFF) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    /**
+     * Return the dotted decimal form of a contiguous netmask, shared for each of the
+     * 33 netmasks so that decoding an RTE does not build the string again
+     * @param mask  the netmask packed into an int
+     * @return      the netmask as XX.X.X.Y
+     */
+    public static String parseIntToSubnetMask(int mask) {
+        int prefixLength = Integer.bitCount(mask);
+        if(mask != prefixLengthToMask(prefixLength)) {
+            return parseIntToIpAddress(mask);
+        }
+        return SUBNET_MASKS[prefixLength];
+    }
+
+    private static final String[] SUBNET_MASKS = new String[33];
+    static {
+        for(int prefixLength = 0; prefixLength <= 32; prefixLength++) {
+            SUBNET_MASKS[prefixLength] = parseIntToIpAddress(prefixLengthToMask(prefixLength));
+        }
+    }
+
+    /**
+     * Return the packed netmask for a given prefix length. A length of 0
+     * returns an all zero mask
+     * @param prefixLength  the number of leading one bits [0, 32]
+     * @return              the netmask packed into an int
+     */
+    public static int prefixLengthToMask(int prefixLength) {
+        if(prefixLength < 0 || prefixLength > 32) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+        return prefixLength == 0 ? 0 : (int)(0xFFFFFFFFL << (32 - prefixLength));
+    }
+
+    /**
+     * Return the prefix length of a packed netmask
+     * @param mask  the netmask packed into an int
+     * @return      the number of leading one bits
+     */
+    public static int maskToPrefixLength(int mask) {
+        int prefixLength = Integer.bitCount(mask);
+        if(mask != prefixLengthToMask(prefixLength)) {
+            throw new IllegalArgumentException("Invalid netmask.");
+        }
+        return prefixLength;
+    }
+
+    /**
+     * Parse a CIDR string (XX.X.X.Y/00) into its network and prefix length.
+     * Host bits of the address are cleared
+     * @param cidr  the CIDR string
+     * @return      an array holding {network, prefixLength}
+     */
+    public static int[] parseCIDR(String cidr) {
+        String[] s = cidr.trim().split("/");
+        if(s.length != 2) {
+            throw new IllegalArgumentException("Invalid CIDR: " + cidr);
+        }
+        int prefixLength = Integer.parseInt(s[1], 10);
+        int mask = prefixLengthToMask(prefixLength);
+        return new int[]{parseIpAddressToInt(s[0]) & mask, prefixLength};
+    }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+/**
+ * {@link IngressProcess}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+
+/**
+ * An ingress worker. It takes the received packets off the {@link IngressQueue}
+ * one at a time and processes them
+ */
+public class IngressProcess extends ServiceProcess {
+    private DatagramSocket clientSocket;
+    private RIPPacket mRIPPacket;
+
+    public IngressProcess(String name, DatagramSocket clientSocket, RIPPacket mRIPPacket) {
+        super(name, 0);
+        this.clientSocket = clientSocket;
+        this.mRIPPacket = mRIPPacket;
+    }
+
+    @Override
+    protected void serve()   {
+        IngressQueue ingressQueue = RoverManager.getInstance().getIngressQueue();
+        while(isRunning()) {
+            try {
+                DatagramPacket packet = ingressQueue.take();
+                new ParseReceivedPacketProcess(packet, clientSocket, mRIPPacket).run();
+            } catch (InterruptedException e) {
+                // asked to stop
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * {@link IngressQueue}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.net.DatagramPacket;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * The bounded stage between the receiving socket and the workers that update the
+ * routing table. Only the newest copy of an update matters, so -
+ * 1.   pending datagrams are keyed by their sender and their first RTE (a response larger than
+ *      25 RTEs is split over several datagrams, each of them starts with a different RTE)
+ * 2.   a datagram whose key is already pending replaces the queued one in place and keeps its
+ *      position in the queue (counted as coalesced)
+ * 3.   at most 'capacity' datagrams are pending. When a datagram with a new key arrives at a
+ *      full queue the overload policy decides: DROP_NEWEST rejects the arriving datagram,
+ *      DROP_OLDEST evicts the datagram that has waited the longest (counted as dropped)
+ *
+ * Configured with -Drip.ingress.capacity=1024 -Drip.ingress.policy=DROP_NEWEST|DROP_OLDEST
+ */
+public class IngressQueue {
+    public static final String POLICY_DROP_NEWEST = "DROP_NEWEST";
+    public static final String POLICY_DROP_OLDEST = "DROP_OLDEST";
+
+    private final int capacity;
+    private final boolean isDropOldest;
+    // arrival order of the pending keys
+    private final ArrayDeque<String> order = new ArrayDeque<>();
+    // key -> newest datagram for that key
+    private final HashMap<String, DatagramPacket> latest = new HashMap<>();
+
+    public IngressQueue(int capacity, String policy) {
+        this.capacity = Math.max(1, capacity);
+        this.isDropOldest = POLICY_DROP_OLDEST.equalsIgnoreCase(policy);
+    }
+
+    /**
+     * Queue a received datagram, coalescing it with a pending datagram of the same key
+     * @param packet    the received datagram, owned by the queue from now on
+     * @return          false if the datagram was dropped by the overload policy
+     */
+    public synchronized boolean offer(DatagramPacket packet) {
+        String key = getKey(packet);
+        if(latest.put(key, packet) != null) {
+            RouterStatistics.getInstance().getPacketsCoalesced().increment();
+            return true;
+        }
+        if(order.size() >= capacity) {
+            RouterStatistics.getInstance().getPacketsDropped().increment();
+            if(!isDropOldest) {
+                latest.remove(key);
+                return false;
+            }
+            latest.remove(order.poll());
+        }
+        order.add(key);
+        notify();
+        return true;
+    }
+
+    /**
+     * Return the oldest pending datagram, waiting for one if the queue is empty
+     */
+    public synchronized DatagramPacket take() throws InterruptedException {
+        while(order.isEmpty()) {
+            wait();
+        }
+        return latest.remove(order.poll());
+    }
+
+    public synchronized int size() {
+        return order.size();
+    }
+
+    /**
+     * Return the coalescing key of a datagram: the sender and the address and
+     * mask of its first RTE
+     */
+    private static String getKey(DatagramPacket packet) {
+        byte[] data = packet.getData();
+        int offset = packet.getOffset();
+        long firstRTE = 0;
+        if(packet.getLength() >= 4 + 20) {
+            for(int i = offset + 8; i < offset + 16; i++) {
+                firstRTE = (firstRTE << 8) | (data[i] & 0xFF);
+            }
+        }
+        return Helper.parseNeighbor(packet.getAddress(), packet.getPort()) + "/" + firstRTE;
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * {@link LifecycleManager}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts, supervises and stops the {@link ServiceProcess}es of the rover -
+ * 1.   start: a service runs in the shared thread pool under a supervisor that restarts
+ *      it after a short pause whenever it fails, as long as the service can be restarted
+ * 2.   health: every service reports its state and whether its loop makes progress
+ * 3.   shutdown (the JVM shutdown hook, e.g. on SIGTERM or Ctrl-C) stops the services
+ *      stage by stage, each stage waiting a bounded time for its services to end -
+ *      a.  receive:    the receiving loops close their sockets, nothing new comes in
+ *      b.  timers:     the timeout process stops; the broadcasting process sends every route
+ *                      it advertises once more with metric 16, so that the neighbors reroute
+ *                      right away instead of waiting for their timeout
+ *      c.  workers:    the ingress queue is drained, then the workers stop
+ *      d.  query:      the query service stops accepting connections
+ *      then the thread pool is shut down and the packet capture is flushed to disk
+ */
+public class LifecycleManager {
+    public static final int STAGE_RECEIVE = 0;
+    public static final int STAGE_TIMERS = 1;
+    public static final int STAGE_WORKERS = 2;
+    public static final int STAGE_QUERY = 3;
+    private static final int STAGES = 4;
+
+    // the pause before a failed service runs again
+    private static final long RESTART_DELAY_IN_MILLIS = 1000;
+    // the longest wait for the services of one stage to end
+    private static final long STAGE_TIMEOUT_IN_MILLIS = 1000;
+    // the longest wait for the ingress queue to drain
+    private static final long DRAIN_TIMEOUT_IN_MILLIS = 1000;
+
+    private static LifecycleManager lifecycleManager = null;
+
+    // service name -> service, in the order they were started
+    private final Map<String, ServiceProcess> services = new LinkedHashMap<>();
+    private final Map<String, Integer> stages = new LinkedHashMap<>();
+    private volatile boolean isShuttingDown = false;
+
+    public static synchronized LifecycleManager getInstance() {
+        if(lifecycleManager == null) {
+            lifecycleManager = new LifecycleManager();
+        }
+        return lifecycleManager;
+    }
+
+    /**
+     * Register a service and run it in the shared thread pool
+     * @param service   the service
+     * @param stage     the shutdown stage of the service, one of the STAGE_ constants
+     */
+    public void start(ServiceProcess service, int stage) {
+        register(service, stage);
+        MyThreadPoolExecutorService.getService().execute(() -> supervise(service));
+    }
+
+    /**
+     * Register a service that the caller runs itself through {@link #supervise(ServiceProcess)}
+     * @param service   the service
+     * @param stage     the shutdown stage of the service, one of the STAGE_ constants
+     */
+    public synchronized void register(ServiceProcess service, int stage) {
+        services.put(service.getName(), service);
+        stages.put(service.getName(), stage);
+    }
+
+    /**
+     * Run a service in the calling thread, again after every failure until the rover
+     * shuts down or the service cannot be restarted
+     */
+    public void supervise(ServiceProcess service) {
+        while(!isShuttingDown) {
+            service.run();
+            if(service.getServiceState() != ServiceProcess.ServiceState.FAILED || !service.isRestartable()) {
+                return;
+            }
+            try {
+                Thread.sleep(RESTART_DELAY_IN_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if(!isShuttingDown) {
+                Log.router(RoverManager.getInstance().getFullRoverId() + ": restarting " + service.getName());
+            }
+        }
+    }
+
+    /**
+     * Return the services in the order they were started
+     */
+    public synchronized List<ServiceProcess> getServices() {
+        return new ArrayList<>(services.values());
+    }
+
+    /**
+     * Return true if every service is healthy
+     */
+    public boolean isHealthy() {
+        for(ServiceProcess service: getServices()) {
+            if(!service.isHealthy()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isShuttingDown() {
+        return isShuttingDown;
+    }
+
+    /**
+     * Stop the rover, see the stages above. Only the first call does anything
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if(isShuttingDown) {
+                return;
+            }
+            isShuttingDown = true;
+        }
+        Log.router(RoverManager.getInstance().getFullRoverId() + ": shutting down");
+        for(int stage = 0; stage < STAGES; stage++) {
+            if(stage == STAGE_WORKERS) {
+                awaitDrained(RoverManager.getInstance().getIngressQueue(), DRAIN_TIMEOUT_IN_MILLIS);
+            }
+            List<ServiceProcess> stopping = new ArrayList<>();
+            synchronized (this) {
+                for(Map.Entry<String, ServiceProcess> entry: services.entrySet()) {
+                    if(stages.get(entry.getKey()) == stage) {
+                        stopping.add(entry.getValue());
+                    }
+                }
+            }
+            for(ServiceProcess service: stopping) {
+                service.requestStop();
+            }
+            awaitStopped(stopping, STAGE_TIMEOUT_IN_MILLIS);
+        }
+        ExecutorService executor = MyThreadPoolExecutorService.getService();
+        executor.shutdown();
+        try {
+            if(!executor.awaitTermination(STAGE_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+        }
+        PacketCapture.getInstance().flush();
+        Log.router(RoverManager.getInstance().getFullRoverId() + ": stopped");
+    }
+
+    /**
+     * Wait until none of the given services runs any more or the time is up
+     */
+    private static void awaitStopped(List<ServiceProcess> stopping, long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        for(ServiceProcess service: stopping) {
+            while(service.getServiceState() == ServiceProcess.ServiceState.RUNNING && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if(service.getServiceState() == ServiceProcess.ServiceState.RUNNING) {
+                Log.router(RoverManager.getInstance().getFullRoverId() + ": " + service.getName() + " did not stop in time");
+            }
+        }
+    }
+
+    /**
+     * Wait until the workers took every packet off the queue or the time is up
+     */
+    private static void awaitDrained(IngressQueue ingressQueue, long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while(ingressQueue.size() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * {@link MainRouterProcess}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The main server logic that listens to client
+ * requests on a port number and serves them as needed
+ */
+public class MainRouterProcess extends Thread{
+    // the routing table
+    private RIPPacket mRIPPacket = RoverManager.getInstance().getmRIPPacket();
+    private String multicastIp;
+    private static int ROUTER_PORT;
+    // the network interfaces, each with its own channel, see RouterInterface
+    private List<RouterInterface> interfaces;
+    // the additional receiving sockets sharing the router port (SO_REUSEPORT)
+    private List<DatagramSocket> receiverSockets = new ArrayList<>();
+    // the receiving loop of the first interface, run by this thread
+    private ReceivingProcess receivingProcess;
+
+    /**
+     * Constructor opens a server socket and starts the services of the rover
+     * with the {@link LifecycleManager}
+     */
+    public MainRouterProcess(String multicastIp, String port) throws IOException  {
+        this.multicastIp = multicastIp;
+        ROUTER_PORT = Integer.parseInt(port);
+        LifecycleManager lifecycleManager = LifecycleManager.getInstance();
+        // fire up the router listening port of every interface by subscribing to a multi cast IP
+        // on that interface. These ports only listen to incoming broadcasts and then assign the
+        // processing to a worker thread
+        int receivers = RouterConfig.getReceivers();
+        this.interfaces = RouterInterface.openAll(InetAddress.getByName(multicastIp), ROUTER_PORT, receivers > 1);
+        RoverManager.getInstance().setInterfaces(interfaces);
+        // only the interface sockets join the group, a group member sharing the port with
+        // other members would receive a copy of every multicast datagram
+        for(int i = 1; i < receivers; i++) {
+            receiverSockets.add(openReceiverSocket(ROUTER_PORT));
+        }
+        // start broadcasting routing table updates on every interface
+        for(RouterInterface routerInterface: interfaces) {
+            startBroadcastingProcess(routerInterface);
+        }
+        // fire up the workers that drain the ingress queue, shared by all the interfaces
+        for(int i = 0; i < MyThreadPoolExecutorService.INGRESS_WORKERS; i++) {
+            lifecycleManager.start(new IngressProcess("ingress-" + i, interfaces.get(0).getReceiveSocket(), mRIPPacket), LifecycleManager.STAGE_WORKERS);
+        }
+        // fire up the timeout process
+        lifecycleManager.start(RoverManager.getInstance().getTimeoutManagementProcess(), LifecycleManager.STAGE_TIMERS);
+        // pick up the changes of the route policy file
+        if(RoutePolicy.getInstance().isEnabled()) {
+            lifecycleManager.start(new PolicyReloadProcess(), LifecycleManager.STAGE_TIMERS);
+        }
+        // answer local queries if configured
+        if(RouterConfig.getQueryPort() > 0) {
+            lifecycleManager.start(new QueryService(RouterConfig.getQueryPort(), mRIPPacket), LifecycleManager.STAGE_QUERY);
+        }
+        // fire up a receiving loop for each additional socket, they belong to the first interface
+        for(int i = 0; i < receiverSockets.size(); i++) {
+            lifecycleManager.start(new ReceivingProcess("receiver-" + (i + 1), receiverSockets.get(i), interfaces.get(0)), LifecycleManager.STAGE_RECEIVE);
+        }
+        // and one for each other interface
+        for(int i = 1; i < interfaces.size(); i++) {
+            RouterInterface routerInterface = interfaces.get(i);
+            lifecycleManager.start(new ReceivingProcess(routerInterface.getServiceName("receiver"), routerInterface.getReceiveSocket(), routerInterface), LifecycleManager.STAGE_RECEIVE);
+        }
+        // the multicast socket of the first interface is served by the thread that runs this process
+        RouterInterface first = interfaces.get(0);
+        receivingProcess = new ReceivingProcess(first.isDefault() ? "receiver-0" : first.getServiceName("receiver"), first.getReceiveSocket(), first);
+        lifecycleManager.register(receivingProcess, LifecycleManager.STAGE_RECEIVE);
+    }
+
+    /**
+     * Open an additional socket on the router port. It shares the port with the
+     * multicast socket through SO_REUSEPORT and does not join the group
+     * @param port  the router port
+     */
+    static DatagramSocket openReceiverSocket(int port) throws IOException {
+        DatagramSocket socket = new DatagramSocket(null);
+        socket.setReuseAddress(true);
+        socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        socket.bind(new InetSocketAddress(port));
+        return socket;
+    }
+
+    /**
+     * Run method implements the logic of collecting requests
+     * from the client and processing them as needed
+     */
+    @Override
+    public void run()   {
+        // the multicast socket is served by this thread
+        LifecycleManager.getInstance().supervise(receivingProcess);
+    }
+
+    /**
+     * Helper function to start executing the broadcasting process of an interface
+     * in the central thread pool service
+     */
+    private void startBroadcastingProcess(RouterInterface routerInterface) {
+        BroadcastingProcess broadcastingProcess = new BroadcastingProcess(routerInterface);
+        LifecycleManager.getInstance().start(broadcastingProcess, LifecycleManager.STAGE_TIMERS);
+        // the hellos go out from the broadcasting socket, they identify the same neighbor
+        if(RouterConfig.getHelloInterval() > 0) {
+            LifecycleManager.getInstance().start(new HelloProcess(routerInterface), LifecycleManager.STAGE_TIMERS);
+        }
+    }
+
+    /**
+     * The hello manager of an interface, enabled with -Drip.hello.interval
+     * 1.   Sends a hello to the multicast group every interval, see {@link NeighborLiveness}
+     * 2.   Wakes up again at the earliest deadline of the neighbors and declares the
+     * neighbors that missed their hellos dead
+     */
+    public class HelloProcess extends ServiceProcess {
+        private final DatagramSocket helloSocket;
+        private final int intervalMillis = RouterConfig.getHelloInterval();
+        private final int multiplier = RouterConfig.getHelloMultiplier();
+
+        public HelloProcess(RouterInterface routerInterface) {
+            // a healthy hello process wakes up at least once per interval
+            super(routerInterface.getServiceName("hello"), Math.max(1000, 10L * RouterConfig.getHelloInterval()));
+            this.helloSocket = routerInterface.getSendSocket();
+        }
+
+        @Override
+        protected void serve() throws IOException   {
+            byte[] hello = NeighborLiveness.toHello(intervalMillis, multiplier);
+            DatagramPacket packet = new DatagramPacket(hello, hello.length, InetAddress.getByName(multicastIp), ROUTER_PORT);
+            NeighborLiveness neighborLiveness = NeighborLiveness.getInstance();
+            List<String> down = new ArrayList<>();
+            long intervalNanos = intervalMillis * 1_000_000L;
+            long nextHello = System.nanoTime();
+            Log.router(RoverManager.getInstance().getFullRoverId() + ": sending hellos every " + intervalMillis
+                    + " ms, a neighbor is down after " + multiplier + " missed hellos");
+            while(isRunning()) {
+                heartbeat();
+                long now = System.nanoTime();
+                if(now - nextHello >= 0) {
+                    helloSocket.send(packet);
+                    nextHello += intervalNanos;
+                    if(nextHello - now <= 0) {
+                        // do not send a burst to catch up after a stall
+                        nextHello = now + intervalNanos;
+                    }
+                }
+                long untilDeadline = neighborLiveness.expire(now, down);
+                for(String neighbor: down) {
+                    Log.router(RoverManager.getInstance().getFullRoverId() + ": " + neighbor + " missed its hellos");
+                    RoverManager.getInstance().getTimeoutManagementProcess().declareDead(neighbor);
+                }
+                down.clear();
+                long sleep = Math.min(nextHello - now, untilDeadline);
+                if(sleep > 0) {
+                    try {
+                        Thread.sleep(sleep / 1_000_000, (int)(sleep % 1_000_000));
+                    } catch (InterruptedException e) {
+                        // asked to stop
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The Broadcast manager of an interface
+     * 1.   This thread is responsible for timely broadcast of the current
+     * routing table to all the neighboring rovers on its interface that have
+     * subscribed to the same multicast IP address.
+     * 2.   It sends RIP packet over UDP protocol through DatagramSocket
+     * 3.   The interval is set to 5 seconds
+     * 4.   When the rover shuts down it withdraws its routes: one last response
+     * carries every advertised route with metric 16
+     */
+    private static final int BROADCASTING_INTERVAL_IN_SECONDS = 5;
+
+    public class BroadcastingProcess extends ServiceProcess {
+        private final RouterInterface routerInterface;
+        private final DatagramSocket routingSocket;
+        // the id of this broadcaster with the triggered updates of the table
+        private final int triggeredUpdates;
+
+        public BroadcastingProcess(RouterInterface routerInterface) {
+            // a healthy broadcaster wakes up at least once per interval
+            super(routerInterface.getServiceName("broadcaster"), 2 * BROADCASTING_INTERVAL_IN_SECONDS * 1000);
+            this.routerInterface = routerInterface;
+            this.routingSocket = routerInterface.getSendSocket();
+            this.triggeredUpdates = mRIPPacket.subscribeTriggeredUpdates();
+            Log.router(RoverManager.getInstance().getFullRoverId() + ": Ready! Broadcasting request on interface "
+                    + routerInterface.getName() + " and waiting for a response...");
+        }
+
+        @Override
+        protected void serve() throws IOException   {
+            // prepare the destination address of the packet
+            InetAddress group = InetAddress.getByName(multicastIp);
+
+            // prepare the destination port
+            Integer destinationPort = ROUTER_PORT;
+
+            // prepare the payload
+            long nextBroadcast = System.currentTimeMillis();
+            try {
+                while(isRunning()) {
+                    heartbeat();
+                    if(System.currentTimeMillis() >= nextBroadcast) {
+                        List<byte[]> buffs;
+                        synchronized (mRIPPacket) {
+                            if (mRIPPacket.isEmpty()) {
+                                // there is nothing to advertise, broadcast request packet
+                                buffs = mRIPPacket.toByteArrays(RIPPacket.COMMAND_REQUEST);
+                            } else{
+                                // else broadcast response packet(s), at most 25 RTEs each,
+                                // encoded for this interface
+                                buffs = mRIPPacket.toResponseByteArrays(routerInterface.filter(mRIPPacket.getExportedList()));
+                            }
+                            capture(buffs, group, destinationPort, PacketCapture.KIND_SENT_PERIODIC);
+                        }
+                        send(buffs, group, destinationPort);
+                        nextBroadcast += BROADCASTING_INTERVAL_IN_SECONDS*1000;
+                        // the suppressed routes reused by now show up in the queries as well
+                        mRIPPacket.refreshSuppressedRoutes();
+                    }
+
+                    // pause until the next broadcast is due, unless a neighbor failure
+                    // asks for the poisoned routes to be sent right away
+                    List<RoutingTableEntry> triggered = mRIPPacket.awaitTriggeredUpdate(triggeredUpdates, nextBroadcast - System.currentTimeMillis());
+                    List<byte[]> buffs;
+                    synchronized (mRIPPacket) {
+                        buffs = mRIPPacket.toResponseByteArrays(routerInterface.filter(RoutePolicy.getInstance().getExport().apply(triggered)));
+                        capture(buffs, group, destinationPort, PacketCapture.KIND_SENT_TRIGGERED);
+                    }
+                    send(buffs, group, destinationPort);
+                }
+            } catch(InterruptedException e){
+                // asked to stop
+            }
+            if(LifecycleManager.getInstance().isShuttingDown()) {
+                // the stop interrupted this thread, the last datagrams must still go out
+                Thread.interrupted();
+                withdraw(group, destinationPort);
+                routingSocket.close();
+            }
+            Log.router(RoverManager.getInstance().getFullRoverId() + ": Stop sending broadcast packets");
+        }
+
+        /**
+         * Tell the neighbors that every route of this rover is gone, so that they
+         * reroute at once instead of waiting for this rover to time out
+         */
+        private void withdraw(InetAddress group, int destinationPort) throws IOException {
+            List<byte[]> buffs;
+            synchronized (mRIPPacket) {
+                if(mRIPPacket.isEmpty()) {
+                    return;
+                }
+                buffs = mRIPPacket.toWithdrawalByteArrays();
+                capture(buffs, group, destinationPort, PacketCapture.KIND_SENT_TRIGGERED);
+            }
+            send(buffs, group, destinationPort);
+            Log.router(RoverManager.getInstance().getFullRoverId() + ": withdrew "
+                    + mRIPPacket.getExportedList().size() + " routes in " + buffs.size() + " datagram(s)");
+        }
+
+        /**
+         * Send the given datagrams to the multicast group
+         */
+        private void send(List<byte[]> buffs, InetAddress group, int destinationPort) throws IOException {
+            for(byte[] buff: buffs) {
+                DatagramPacket packet = new DatagramPacket(buff, buff.length, group, destinationPort);
+                routingSocket.send(packet);
+                routerInterface.getPacketsSent().increment();
+            }
+        }
+
+        /**
+         * Record the given datagrams with the {@link PacketCapture}. Called while holding
+         * the table lock, so that they are recorded in order with the received datagrams
+         * @param kind  periodic or triggered
+         */
+        private void capture(List<byte[]> buffs, InetAddress group, int destinationPort, byte kind) {
+            for(int part = 0; part < buffs.size(); part++) {
+                byte[] buff = buffs.get(part);
+                PacketCapture.getInstance().capture(kind, RoverManager.getInstance().getInterfaces().indexOf(routerInterface),
+                        group, destinationPort, buff, 0, buff.length, part, buffs.size());
+            }
+        }
+    }
+}
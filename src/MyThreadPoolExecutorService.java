@@ -21,6 +21,17 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class MyThreadPoolExecutorService {
+    // the receiving, broadcasting, timeout, hello, policy and query loops run until the rover shuts down,
+    // they each hold on to a pool thread for the lifetime of the rover. Every interface has its own
+    // receiving, broadcasting and hello loop; the timeout loop and the loops of the additional
+    // receiving sockets (rip.receivers - 1) make up the rest
+    private static final int INTERFACES = Math.max(1, RouterConfig.getInterfaces().size());
+    private static final int LONG_RUNNING_PROCESSES = RouterConfig.getReceivers()
+            + INTERFACES * (2 + (RouterConfig.getHelloInterval() > 0 ? 1 : 0))
+            + (RouterConfig.getPolicyFile() != null ? 1 : 0)
+            + (RouterConfig.getQueryPort() > 0 ? 1 : 0);
+    // the workers draining the ingress queue, one per core
+    public static final int INGRESS_WORKERS = Runtime.getRuntime().availableProcessors();
     private static MyThreadPoolExecutorService myThreadPoolExecutorService = null;
     private static ExecutorService service;
 
@@ -32,7 +43,7 @@ public class MyThreadPoolExecutorService {
     }
 
     public MyThreadPoolExecutorService() {
-        service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        service = Executors.newFixedThreadPool(INGRESS_WORKERS + LONG_RUNNING_PROCESSES);
     }
 
     public static ExecutorService getService() {
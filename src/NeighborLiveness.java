@@ -0,0 +1,130 @@
+/**
+ * {@link NeighborLiveness}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sub-second neighbor liveness through hello datagrams, independent of the full table
+ * broadcasts. Every rover with -Drip.hello.interval set sends a hello to the group from
+ * its broadcasting socket (so that the hello and the routes share the neighbor identity
+ * "ip:port") every interval -
+ *      command (10), version (2), must be zero (0), detect multiplier, interval in ms (4 bytes)
+ *
+ * A hello is handled on the receiving thread: it never enters the ingress queue and never
+ * takes the routing table lock, it only moves the deadline of its neighbor to
+ * interval x multiplier (as announced by that neighbor) from now. A neighbor whose deadline
+ * passes is handed to the neighbor failure handling of {@link TimeoutManagementProcess},
+ * well before the 10 s timeout of the full broadcasts would notice. Only neighbors that
+ * send hellos are tracked, the others are left to the timeout.
+ */
+public class NeighborLiveness {
+    public static final int COMMAND_HELLO = 10;
+    public static final int HELLO_LENGTH = 8;
+
+    private static final NeighborLiveness neighborLiveness = new NeighborLiveness();
+
+    // Helper.neighborKey -> neighbor
+    private final ConcurrentHashMap<Long, Neighbor> neighbors = new ConcurrentHashMap<>();
+
+    public static NeighborLiveness getInstance() {
+        return neighborLiveness;
+    }
+
+    /**
+     * Return true if the datagram is a hello
+     */
+    public static boolean isHello(byte[] data, int length) {
+        return length == HELLO_LENGTH && (data[0] & 0xff) == COMMAND_HELLO;
+    }
+
+    /**
+     * Return the hello datagram of this rover
+     * @param intervalMillis    the time between two hellos
+     * @param multiplier        the number of hellos that may be missed before the neighbors give up on this rover
+     */
+    public static byte[] toHello(int intervalMillis, int multiplier) {
+        return new byte[] {
+                (byte)COMMAND_HELLO, 2, 0, (byte)multiplier,
+                (byte)(intervalMillis >>> 24), (byte)(intervalMillis >>> 16), (byte)(intervalMillis >>> 8), (byte)intervalMillis
+        };
+    }
+
+    /**
+     * Record a hello, called on the receiving thread for every hello datagram
+     * @param address   the source address of the datagram
+     * @param port      the source port of the datagram
+     * @param data      the datagram, see {@link #isHello}
+     */
+    public void onHello(InetAddress address, int port, byte[] data) {
+        if(RoverManager.getInstance().isLocalSender(address, port)) {
+            RouterStatistics.getInstance().getPacketsFromSelf().increment();
+            return;
+        }
+        long intervalMillis = ((data[4] & 0xffL) << 24) | ((data[5] & 0xff) << 16) | ((data[6] & 0xff) << 8) | (data[7] & 0xff);
+        long holdNanos = intervalMillis * Math.max(1, data[3] & 0xff) * 1_000_000L;
+        long key = Helper.neighborKey(address, port);
+        Neighbor neighbor = neighbors.get(key);
+        if(neighbor == null) {
+            neighbor = neighbors.computeIfAbsent(key, k -> new Neighbor(Helper.parseNeighbor(address, port)));
+        }
+        neighbor.deadline = System.nanoTime() + holdNanos;
+        RouterStatistics.getInstance().getHellosReceived().increment();
+    }
+
+    /**
+     * Stop tracking the neighbors whose deadline has passed
+     * @param now   the current System.nanoTime()
+     * @param down  receives the neighbors ("ip:port") that missed their hellos
+     * @return      the ns until the earliest deadline of the remaining neighbors, Long.MAX_VALUE if there are none
+     */
+    public long expire(long now, List<String> down) {
+        long untilNextDeadline = Long.MAX_VALUE;
+        for(Iterator<Map.Entry<Long, Neighbor>> it = neighbors.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Neighbor> entry = it.next();
+            Neighbor neighbor = entry.getValue();
+            long deadline = neighbor.deadline;
+            if(now - deadline < 0) {
+                untilNextDeadline = Math.min(untilNextDeadline, deadline - now);
+                continue;
+            }
+            it.remove();
+            if(neighbor.deadline != deadline) {
+                // a hello came in meanwhile
+                neighbors.putIfAbsent(entry.getKey(), neighbor);
+                continue;
+            }
+            down.add(neighbor.name);
+        }
+        return untilNextDeadline;
+    }
+
+    /**
+     * Return the number of neighbors sending hellos
+     */
+    public int size() {
+        return neighbors.size();
+    }
+
+    private static class Neighbor {
+        private final String name;
+        private volatile long deadline;
+
+        private Neighbor(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/**
+ * {@link PacketCapture}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An optional capture of the traffic of a rover and of everything that changes its routing
+ * table, written into a memory mapped ring file so that a misbehaving rover can be replayed
+ * later (see {@link CaptureReplay}). Captured are -
+ * 1.   every datagram received, recorded by the receiving thread as it comes off the socket:
+ *      hellos, the rover's own datagrams looped back, and the datagrams that are later
+ *      coalesced or dropped by the ingress queue or rejected for their header included
+ * 2.   every received datagram applied to the routing table, recorded again under the table
+ *      lock in the order the datagrams are applied. A replay applies these records only, so
+ *      that it reproduces the table whatever the ingress queue did with the others
+ * 3.   every datagram sent, periodic and triggered, numbered "part of parts" per broadcast
+ *      and recorded under the table lock when it is encoded
+ * 4.   every neighbor declared dead by the timeout process
+ *
+ * A datagram is recorded with the index of the interface it was received or sent on, a
+ * neighbor failure applies to every interface.
+ *
+ * The file is a 4 KB header (magic, slot geometry, start time, the local prefixes, summary
+ * ranges and interface names of the rover) followed by fixed size slots, one record per slot. A writer
+ * claims the next sequence number with a single atomic increment and fills slot
+ * (sequence % slots) without any lock, the sequence is stored last to mark the slot complete.
+ * Once the ring is full the oldest records are overwritten. Timestamps are System.nanoTime()
+ * relative to the start of the capture.
+ *
+ * Configured with -Drip.capture=<file> and -Drip.capture.size=<MB> (default 64)
+ */
+public class PacketCapture {
+    public static final long MAGIC = 0x5249504341503031L; // "RIPCAP01"
+    public static final int HEADER_SIZE = 4096;
+    // slot: sequence + 1 (8), nanos (8), kind (1), address length (1), port (2), length (2),
+    // part (2), parts (2), interface (1), padding (5), address (16), payload (504)
+    public static final int SLOT_HEADER_SIZE = 48;
+    public static final int SLOT_SIZE = SLOT_HEADER_SIZE + 504;
+
+    public static final byte KIND_RECEIVED = 0;
+    public static final byte KIND_SENT_PERIODIC = 1;
+    public static final byte KIND_SENT_TRIGGERED = 2;
+    public static final byte KIND_NEIGHBOR_DOWN = 3;
+    public static final byte KIND_APPLIED = 4;
+
+    // opened on first use, by then the rover knows its local prefixes
+    private static final PacketCapture packetCapture = open();
+
+    private final MappedByteBuffer ring;
+    private final int slots;
+    private final long startNanos;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    public static PacketCapture getInstance() {
+        return packetCapture;
+    }
+
+    private static PacketCapture open() {
+        String path = System.getProperty(RouterConfig.PROPERTY_CAPTURE);
+        if(path == null || path.trim().isEmpty()) {
+            return new PacketCapture();
+        }
+        try {
+            PacketCapture capture = new PacketCapture(path.trim(), RouterConfig.getInt(RouterConfig.PROPERTY_CAPTURE_SIZE, 64) * 1024L * 1024L);
+            Log.router("PacketCapture: capturing to " + path.trim());
+            return capture;
+        } catch (IOException ex) {
+            Log.router("PacketCapture: cannot open '" + path + "', capture is off");
+            return new PacketCapture();
+        }
+    }
+
+    /**
+     * A capture that records nothing
+     */
+    private PacketCapture() {
+        this.ring = null;
+        this.slots = 0;
+        this.startNanos = 0;
+    }
+
+    /**
+     * Create (or truncate) a ring file of about the given size and map it
+     * @param path  the ring file
+     * @param size  the size of the file in bytes
+     */
+    public PacketCapture(String path, long size) throws IOException {
+        this.slots = (int)Math.max(1, Math.min(Integer.MAX_VALUE / SLOT_SIZE, (size - HEADER_SIZE) / SLOT_SIZE));
+        long fileSize = HEADER_SIZE + (long)slots * SLOT_SIZE;
+        try(RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(0);
+            file.setLength(fileSize);
+            this.ring = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        this.startNanos = System.nanoTime();
+        ring.putLong(0, MAGIC);
+        ring.putInt(8, SLOT_SIZE);
+        ring.putInt(12, slots);
+        ring.putLong(16, System.currentTimeMillis());
+        List<String> localPrefixes = new ArrayList<>();
+        for(RoutingTableEntry local: RoverManager.getInstance().getLocalPrefixes()) {
+            localPrefixes.add(local.getAddress() + "/" + Helper.maskToPrefixLength(Helper.parseIpAddressToInt(local.getSubnetMask())));
+        }
+        putString(24, String.join(",", localPrefixes));
+        putString(24 + 1024, String.join(",", RouterConfig.getSummaryRanges()));
+    }
+
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * Record the names of the interfaces, in the order of their indexes
+     */
+    public void setInterfaces(List<String> names) {
+        if(ring != null) {
+            putString(24 + 2048, String.join(",", names));
+        }
+    }
+
+    /**
+     * Record a datagram
+     * @param kind      one of the KIND_ constants
+     * @param interfaceId   the index of the interface the datagram was received or sent on
+     * @param address   the source of a received datagram, the destination of a sent one
+     * @param port      the port belonging to the address
+     * @param data      the datagram buffer
+     * @param offset    the start of the datagram in the buffer
+     * @param length    the length of the datagram
+     * @param part      the index of this datagram in its broadcast, 0 for received datagrams
+     * @param parts     the number of datagrams in its broadcast, 1 for received datagrams
+     */
+    public void capture(byte kind, int interfaceId, InetAddress address, int port, byte[] data, int offset, int length, int part, int parts) {
+        if(ring == null) {
+            return;
+        }
+        long sequence = nextSequence.getAndIncrement();
+        int slot = HEADER_SIZE + (int)(sequence % slots) * SLOT_SIZE;
+        length = Math.min(length, SLOT_SIZE - SLOT_HEADER_SIZE);
+        // an overwritten slot is incomplete until its new sequence is in place
+        ring.putLong(slot, 0);
+        ring.putLong(slot + 8, System.nanoTime() - startNanos);
+        ring.put(slot + 16, kind);
+        byte[] rawAddress = address == null ? new byte[0] : address.getAddress();
+        ring.put(slot + 17, (byte)rawAddress.length);
+        ring.putShort(slot + 18, (short)port);
+        ring.putShort(slot + 20, (short)length);
+        ring.putShort(slot + 22, (short)part);
+        ring.putShort(slot + 24, (short)parts);
+        ring.put(slot + 26, (byte)interfaceId);
+        ring.put(slot + 32, rawAddress, 0, rawAddress.length);
+        ring.put(slot + SLOT_HEADER_SIZE, data, offset, length);
+        ring.putLong(slot, sequence + 1);
+    }
+
+    /**
+     * Record a neighbor declared dead
+     * @param neighbor  the neighbor ("ip:port")
+     */
+    public void captureNeighborDown(String neighbor) {
+        if(ring == null) {
+            return;
+        }
+        byte[] data = neighbor.getBytes(StandardCharsets.US_ASCII);
+        capture(KIND_NEIGHBOR_DOWN, 0, null, 0, data, 0, data.length, 0, 1);
+    }
+
+    /**
+     * Write the records to the file, called when the rover shuts down
+     */
+    public void flush() {
+        if(ring != null) {
+            ring.force();
+        }
+    }
+
+    private void putString(int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        int length = Math.min(bytes.length, 1020);
+        ring.putInt(offset, length);
+        ring.put(offset + 4, bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The content of a ring file: the header fields and the complete records, oldest first
+     */
+    public static class Capture {
+        private final long startedAt;
+        private final String localPrefixes;
+        private final String summaryRanges;
+        private final List<String> interfaces;
+        private final List<Record> records;
+        private final boolean hasWrapped;
+
+        private Capture(long startedAt, String localPrefixes, String summaryRanges, List<String> interfaces, List<Record> records, boolean hasWrapped) {
+            this.startedAt = startedAt;
+            this.localPrefixes = localPrefixes;
+            this.summaryRanges = summaryRanges;
+            this.interfaces = interfaces;
+            this.records = records;
+            this.hasWrapped = hasWrapped;
+        }
+
+        /**
+         * Return the wall clock time (ms) the capture started at
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public String getLocalPrefixes() {
+            return localPrefixes;
+        }
+
+        public String getSummaryRanges() {
+            return summaryRanges;
+        }
+
+        /**
+         * Return the names of the interfaces by index, a single default interface if the
+         * capture does not name them
+         */
+        public List<String> getInterfaces() {
+            return interfaces;
+        }
+
+        public List<Record> getRecords() {
+            return records;
+        }
+
+        /**
+         * Return true if the oldest records were overwritten
+         */
+        public boolean hasWrapped() {
+            return hasWrapped;
+        }
+    }
+
+    /**
+     * Read a ring file
+     * @param path  the ring file
+     * @return      the capture, records ordered by sequence
+     */
+    public static Capture read(String path) throws IOException {
+        ByteBuffer buffer;
+        try(RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        if(buffer.getLong(0) != MAGIC || buffer.getInt(8) != SLOT_SIZE) {
+            throw new IOException("not a RIP capture: " + path);
+        }
+        int slots = buffer.getInt(12);
+        List<Record> records = new ArrayList<>();
+        long maxSequence = -1;
+        for(int i = 0; i < slots; i++) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            long sequence = buffer.getLong(slot) - 1;
+            if(sequence < 0) {
+                continue;
+            }
+            maxSequence = Math.max(maxSequence, sequence);
+            byte[] rawAddress = new byte[buffer.get(slot + 17)];
+            buffer.get(slot + 32, rawAddress);
+            byte[] data = new byte[buffer.getShort(slot + 20) & 0xFFFF];
+            buffer.get(slot + SLOT_HEADER_SIZE, data);
+            records.add(new Record(sequence, buffer.getLong(slot + 8), buffer.get(slot + 16), toAddress(rawAddress),
+                    buffer.getShort(slot + 18) & 0xFFFF, data,
+                    buffer.getShort(slot + 22) & 0xFFFF, buffer.getShort(slot + 24) & 0xFFFF, buffer.get(slot + 26) & 0xFF));
+        }
+        records.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        String interfaces = getString(buffer, 24 + 2048);
+        return new Capture(buffer.getLong(16), getString(buffer, 24), getString(buffer, 24 + 1024),
+                Arrays.asList(interfaces.isEmpty() ? new String[]{RouterInterface.DEFAULT_NAME} : interfaces.split(",")),
+                records, maxSequence >= slots);
+    }
+
+    private static InetAddress toAddress(byte[] rawAddress) {
+        try {
+            return rawAddress.length == 0 ? null : InetAddress.getByAddress(rawAddress);
+        } catch (UnknownHostException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * One captured event
+     */
+    public static class Record {
+        private final long sequence;
+        private final long nanos;
+        private final byte kind;
+        private final InetAddress address;
+        private final int port;
+        private final byte[] data;
+        private final int part;
+        private final int parts;
+        private final int interfaceId;
+
+        private Record(long sequence, long nanos, byte kind, InetAddress address, int port, byte[] data, int part, int parts, int interfaceId) {
+            this.sequence = sequence;
+            this.nanos = nanos;
+            this.kind = kind;
+            this.address = address;
+            this.port = port;
+            this.data = data;
+            this.part = part;
+            this.parts = parts;
+            this.interfaceId = interfaceId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Return the time of the record in ns since the start of the capture
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public byte getKind() {
+            return kind;
+        }
+
+        public InetAddress getAddress() {
+            return address;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getPart() {
+            return part;
+        }
+
+        public int getParts() {
+            return parts;
+        }
+
+        /**
+         * Return the index of the interface the datagram was received or sent on
+         */
+        public int getInterfaceId() {
+            return interfaceId;
+        }
+    }
+}
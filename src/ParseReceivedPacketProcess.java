@@ -0,0 +1,282 @@
+/**
+ * {@link ParseReceivedPacketProcess}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The received packet manager. It runs on the ingress worker that took
+ * the packet off the queue and is responsible for -
+ * 1.   Updating the current access time for a given neighboring router
+ * 2.   Parsing the incoming bytes and creating a new RIPPacket class out of them
+ * 3.
+ */
+public class ParseReceivedPacketProcess implements Runnable {
+    // the number of equal cost next hops kept per destination
+    private static final int MAX_PATHS = RouterConfig.getMaxPaths();
+    private DatagramPacket clientPacket;
+    private DatagramSocket clientSocket;
+    private RIPPacket mRIPPacket;
+
+    public ParseReceivedPacketProcess(DatagramPacket clientPacket, DatagramSocket clientSocket, RIPPacket mRIPPacket) {
+        this.clientPacket = clientPacket;
+        this.clientSocket = clientSocket;
+        this.mRIPPacket = mRIPPacket;
+    }
+
+    @Override
+    public void run()   {
+        try{
+            // extract data from the packet
+            byte[] incomingBytes = clientPacket.getData();
+
+            // do nothing if this packet belongs to this rover itself
+            if(RoverManager.getInstance().isLocalSender(clientPacket.getAddress(), clientPacket.getPort())){
+                RouterStatistics.getInstance().getPacketsFromSelf().increment();
+                return;
+            }
+            String mSender = Helper.parseNeighbor(clientPacket.getAddress(), clientPacket.getPort());
+
+            // update the access time of the sender in the timeout table
+            RoverManager.getInstance()
+                    .getTimeoutManagementProcess()
+                    .updateTimeout(mSender);
+
+            // parse the input and update rover's routing table
+            parseBytes(incomingBytes, clientPacket.getLength(), mSender);
+            RouterStatistics.getInstance().getPacketsProcessed().increment();
+        } catch (Exception ex) {
+            Log.router(RoverManager.getInstance().getFullRoverId() + ": There was some problem reading data from the client");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Parse the incoming byte array to an RIPPacket. The fields are decoded with
+     * shifts straight from the buffer, only the RTEs that are kept allocate
+     * @param incomingBytes the incoming byte stream to be parsed
+     * @param length        the number of valid bytes in the stream
+     * @param mSender       the neighbor that sent the packet ("ip:port")
+     */
+    private void parseBytes(byte[] incomingBytes, int length, String mSender) {
+        // drop anything that is not a RIP request/response
+        boolean isMalformed = length < 4 || (length - 4) % 20 != 0;
+        int command = incomingBytes[0] & 0xff;
+        if(length < 4 || (command != 1 && command != 2) || (incomingBytes[1] & 0xff) == 0) {
+            RouterStatistics.getInstance().getPacketsMalformed().increment();
+            return;
+        }
+
+        // extract command, version and mustBeZero from header
+        String mCommand = command == 1 ? RIPPacket.COMMAND_REQUEST : RIPPacket.COMMAND_RESPONSE;
+        String mVersion = String.valueOf(incomingBytes[1] & 0xff);
+        String mMustBeZero = String.valueOf(incomingBytes[3] & 0xff);
+
+        // a temporary list of RoutingTableEntry that later becomes a part of the received RITPacket
+        List<RoutingTableEntry> tempRoutingTableEntryList = new ArrayList<>((length - 4) / 20);
+        // the import rules that apply to this neighbor, one trie walk per RTE
+        RoutePolicy.Direction importPolicy = RoutePolicy.getInstance().getImport();
+        PrefixTrie importRules = importPolicy.select(mSender);
+        // loop over all the RTEs (the first one at index 4) and extract relevant fields
+        for(int i = 4; i + 20 <= length; i += 20) {
+            int mAddressFamily = readShort(incomingBytes, i);
+            int mRouteTag = readShort(incomingBytes, i + 2);
+            int mIpv4 = readInt(incomingBytes, i + 4);
+            int mSubnet = readInt(incomingBytes, i + 8);
+            int mNextHop = readInt(incomingBytes, i + 12);
+            long mMetric = readInt(incomingBytes, i + 16) & 0xFFFFFFFFL;
+
+            // check if there are any more RTE bytes to be read from this packet
+            if(isPacketOver(mAddressFamily, mRouteTag, mIpv4, mSubnet)) {
+                break;
+            }
+
+            // skip RTEs that would poison the table: unknown family, metric out of
+            // range, non contiguous mask or host bits set
+            if(!isValidEntry(mAddressFamily, mIpv4, mSubnet, mMetric)) {
+                isMalformed = true;
+                continue;
+            }
+
+            // apply the import policy
+            int rule = importRules.match(mIpv4, Integer.bitCount(mSubnet));
+            if(importPolicy.isDeny(rule)) {
+                RouterStatistics.getInstance().getRoutesFilteredIn().increment();
+                continue;
+            }
+            mRouteTag = importPolicy.applyTag(rule, mRouteTag);
+            mMetric = importPolicy.applyOffset(rule, (int)mMetric);
+
+            // create a RoutingTableEntry from the above data
+            // and append to the end of the tempList
+            tempRoutingTableEntryList.add(new RoutingTableEntry(mAddressFamily, mRouteTag
+                    , Helper.parseIntToIpAddress(mIpv4)
+                    , Helper.parseIntToSubnetMask(mSubnet)
+                    , mNextHop == 0 ? RoutingTableEntry.NEXT_HOP_SELF : Helper.parseIntToIpAddress(mNextHop)
+                    , (int)mMetric));
+        }
+        if(isMalformed) {
+            RouterStatistics.getInstance().getPacketsMalformed().increment();
+        }
+
+        // now that we have all the data from the received RIPPacket
+        // let us update the current routing table accordingly
+        updateMyRoutingTable(new RIPPacket(mCommand, mVersion, mMustBeZero, mSender, tempRoutingTableEntryList));
+    }
+
+    private static int readShort(byte[] bytes, int i) {
+        return ((bytes[i] & 0xff) << 8) | (bytes[i + 1] & 0xff);
+    }
+
+    private static int readInt(byte[] bytes, int i) {
+        return ((bytes[i] & 0xff) << 24) | ((bytes[i + 1] & 0xff) << 16) | ((bytes[i + 2] & 0xff) << 8) | (bytes[i + 3] & 0xff);
+    }
+
+    /**
+     * Method to compare each entry in the incoming table and update
+     * the routing table as needed.
+     * @param receivedRIPPacket
+     */
+    private void updateMyRoutingTable(RIPPacket receivedRIPPacket) {
+        boolean hasRoutingTableChanged = false;
+        // also holds the changes of suppressed routes, which the queries still see
+        List<RoutingTableEntry> changedEntries = new ArrayList<>();
+        synchronized (mRIPPacket) {
+            // recorded in the order the datagrams are applied, so that a replay reproduces the table
+            PacketCapture.getInstance().capture(PacketCapture.KIND_APPLIED,
+                    PacketCapture.getInstance().isEnabled() ? RoverManager.getInstance().getInterfaceId(receivedRIPPacket.getSender()) : 0,
+                    clientPacket.getAddress(), clientPacket.getPort(),
+                    clientPacket.getData(), clientPacket.getOffset(), clientPacket.getLength(), 0, 1);
+            // go over each entry in the incoming table
+            for(RoutingTableEntry incomingEntry: receivedRIPPacket.getmList())  {
+                // ignore the networks that are attached to this rover
+                if(RoverManager.getInstance().isLocalPrefix(incomingEntry.getAddress(), incomingEntry.getSubnetMask())) {
+                    continue;
+                }
+                int metric = Math.min(1 + incomingEntry.getMetric(), RIPPacket.METRIC_UNREACHABLE);
+
+                boolean isEntryChanged = false;
+
+                // a destination is identified by both the address and the mask
+                RoutingTableEntry myEntry = mRIPPacket.findEntry(incomingEntry.getAddress(), incomingEntry.getSubnetMask());
+                if(myEntry == null) {
+                    // this particular destination has no mention in the router's own
+                    // routing table hence we can just add it, unless it is unreachable
+                    if(metric < RIPPacket.METRIC_UNREACHABLE) {
+                        RoutingTableEntry newEntry = new RoutingTableEntry(RoutingTableEntry.ADDRESS_FAMILY_IP
+                                , incomingEntry.getRouteTag()
+                                , incomingEntry.getAddress()
+                                , incomingEntry.getSubnetMask()
+                                , receivedRIPPacket.getSenderAddress()
+                                , metric);
+                        newEntry.setNeighbor(receivedRIPPacket.getSender());
+                        // addEntry indexes the entry under its next hop
+                        mRIPPacket.addEntry(newEntry);
+                        hasRoutingTableChanged = true;
+                        changedEntries.add(newEntry);
+                    }
+                } else if(myEntry.getEqualCostNeighbors().contains(receivedRIPPacket.getSender())) {
+                    // the sender is one of the NEXT HOPs of the entry in the CURRENT table
+                    if(metric == myEntry.getMetric()) {
+                        if(incomingEntry.getRouteTag() == myEntry.getRouteTag()) {
+                            continue;
+                        }
+                        // e.g. the tag set by the import policy changed
+                        myEntry.setRouteTag(incomingEntry.getRouteTag());
+                    } else if(metric > myEntry.getMetric() && mRIPPacket.removeEqualCostNextHop(myEntry, receivedRIPPacket.getSender())) {
+                        // this path got worse, the remaining equal cost paths take over at once
+                        mRIPPacket.logFailover(myEntry, receivedRIPPacket.getSender());
+                    } else {
+                        // trust the incoming packet blindly and overwrite the metric,
+                        // the sender becomes the only next hop
+                        myEntry.setMetric(metric);
+                        myEntry.setRouteTag(incomingEntry.getRouteTag());
+                        mRIPPacket.setNextHop(myEntry, receivedRIPPacket.getSender());
+                    }
+                    isEntryChanged = true;
+                } else if(metric < myEntry.getMetric()) {
+                    // incoming is better, time to update the current entry
+                    myEntry.setMetric(metric);
+                    myEntry.setRouteTag(incomingEntry.getRouteTag());
+                    // update the next hop to this new client
+                    mRIPPacket.setNextHop(myEntry, receivedRIPPacket.getSender());
+                    isEntryChanged = true;
+                } else if(metric == myEntry.getMetric() && metric < RIPPacket.METRIC_UNREACHABLE
+                        && myEntry.getEqualCostNeighbors().size() < MAX_PATHS) {
+                    // an equal cost alternative, keep it to share the load
+                    mRIPPacket.addEqualCostNextHop(myEntry, receivedRIPPacket.getSender());
+                    isEntryChanged = true;
+                }
+
+                if(isEntryChanged) {
+                    changedEntries.add(myEntry);
+                    if(myEntry.getMetric() < RIPPacket.METRIC_UNREACHABLE && FlapDamping.getInstance().isSuppressed(myEntry)) {
+                        // a suppressed route is advertised as unreachable whatever its metric,
+                        // coming back needs no new table either
+                        RouterStatistics.getInstance().getUpdatesDamped().increment();
+                    } else {
+                        hasRoutingTableChanged = true;
+                    }
+                }
+            }
+            if(!changedEntries.isEmpty()) {
+                mRIPPacket.invalidateSnapshot(changedEntries);
+            }
+        }
+        // off the lock, the queries never wait for an update and an update never waits for them
+        if(!changedEntries.isEmpty()) {
+            mRIPPacket.publishSnapshot();
+        }
+
+        // print the routing table if anything changed
+        if(hasRoutingTableChanged) {
+            mRIPPacket.print();
+        }
+    }
+
+    /**
+     * Return true if an incoming RTE can be installed in the routing table
+     * @param addressFamily
+     * @param ipv4
+     * @param subnet
+     * @param metric
+     * @return
+     */
+    private boolean isValidEntry(int addressFamily, int ipv4, int subnet, long metric) {
+        if(addressFamily != RoutingTableEntry.ADDRESS_FAMILY_IP || metric < 0 || metric > RIPPacket.METRIC_UNREACHABLE) {
+            return false;
+        }
+        // the mask must be contiguous and the host bits of the address clear
+        return subnet == Helper.prefixLengthToMask(Integer.bitCount(subnet)) && (ipv4 & ~subnet) == 0;
+    }
+
+    /**
+     * Return true if the end of packet is reached. The end is determined by
+     * the values of the various fields within the packet. If all of them converge
+     * to null at any given point of time then that means that there is nothing else
+     * to go over inside the packet
+     * @param addressFamily
+     * @param routeTag
+     * @param ipv4
+     * @param subnet
+     * @return
+     */
+    private boolean isPacketOver(int addressFamily, int routeTag, int ipv4, int subnet) {
+        return addressFamily == 0
+                && routeTag == 0
+                && ipv4 == 0
+                && subnet == 0;
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * {@link PolicyBenchmark}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark of the route policy engine ({@link RoutePolicy}) with thousands of random rules -
+ * 1.   compile: the time to parse and compile the rules, and the size of the tries
+ * 2.   lookup: routes matched against the compiled tries and, as the reference, against the
+ *      rules one after the other. Every route is checked with both and the disagreements are
+ *      reported (there must be none)
+ * 3.   export: encoding a full table with and without the export policy
+ * 4.   hot reload: the policy file is rewritten while a thread keeps matching routes and
+ *      updating the table, the time of a reload and the longest stall of that thread
+ *      (against the longest one without reloads) are reported
+ *
+ * EXECUTING:
+ *      java PolicyBenchmark [rules] [routes] [reloads]
+ */
+public class PolicyBenchmark {
+    private static final int NEIGHBORS = 8;
+    private static final int WINDOW_IN_MILLIS = 2000;
+
+    private static volatile boolean isRunning = true;
+    private static volatile long longestStall = 0;
+
+    public static void main(String[] args) throws Exception {
+        int rules = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int routes = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int reloads = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File file = File.createTempFile("policy", ".txt");
+        file.deleteOnExit();
+        System.setProperty(RouterConfig.PROPERTY_POLICY, file.getAbsolutePath());
+        PrintStream out = BenchSupport.silenceStdout();
+        Random random = new Random(39);
+
+        // 1. compile
+        List<String> lines = randomRules(random, rules);
+        RoutePolicy.Policy policy = RoutePolicy.compile(lines);
+        int compiles = 10;
+        for(int i = 0; i < compiles; i++) {
+            RoutePolicy.compile(lines);
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < compiles; i++) {
+            policy = RoutePolicy.compile(lines);
+        }
+        double compileMillis = (System.nanoTime() - start) / 1e6 / compiles;
+        RoutePolicy.Direction importPolicy = policy.getImport();
+        out.printf("%d import and %d export rules: compiled in %.1f ms, %d trie nodes without neighbor, %d for neighbor 0%n",
+                importPolicy.getRules().size(), policy.getExport().getRules().size(), compileMillis,
+                importPolicy.select(null).size(), importPolicy.select(neighbor(0)).size());
+
+        // 2. lookup
+        int lookups = 1 << 20;
+        int[] networks = new int[lookups];
+        int[] lengths = new int[lookups];
+        String[] senders = new String[lookups];
+        for(int i = 0; i < lookups; i++) {
+            lengths[i] = 16 + random.nextInt(13);
+            networks[i] = ((10 << 24) | random.nextInt(1 << 24)) & Helper.prefixLengthToMask(lengths[i]);
+            senders[i] = neighbor(random.nextInt(NEIGHBORS + 1));
+        }
+        // every route is checked against the reference, a subset is timed with it
+        int mismatches = 0;
+        int checked = Math.min(lookups, 200000);
+        for(int i = 0; i < checked; i++) {
+            if(linearMatch(importPolicy.getRules(), senders[i], networks[i], lengths[i]) != importPolicy.match(senders[i], networks[i], lengths[i])) {
+                mismatches++;
+            }
+        }
+        int linearLookups = Math.min(lookups, 20000);
+        int sink = 0;
+        start = System.nanoTime();
+        for(int i = 0; i < linearLookups; i++) {
+            sink += linearMatch(importPolicy.getRules(), senders[i], networks[i], lengths[i]);
+        }
+        double linearRate = linearLookups / ((System.nanoTime() - start) / 1e9);
+        int matched = 0;
+        int denied = 0;
+        double compiledRate = 0;
+        for(int round = 0; round < 3; round++) {
+            matched = 0;
+            denied = 0;
+            start = System.nanoTime();
+            for(int i = 0; i < lookups; i++) {
+                int rule = importPolicy.match(senders[i], networks[i], lengths[i]);
+                matched += rule >= 0 ? 1 : 0;
+                denied += importPolicy.isDeny(rule) ? 1 : 0;
+            }
+            compiledRate = lookups / ((System.nanoTime() - start) / 1e9);
+        }
+        // within a datagram the neighbor is selected once, then one trie walk per RTE
+        PrefixTrie trie = importPolicy.select(neighbor(0));
+        double trieRate = 0;
+        for(int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            for(int i = 0; i < lookups; i++) {
+                sink += trie.match(networks[i], lengths[i]);
+            }
+            trieRate = lookups / ((System.nanoTime() - start) / 1e9);
+        }
+        out.printf("lookup: linear %10.0f routes/s | compiled %10.0f routes/s (%.0fx) | trie walk alone %10.0f routes/s%n",
+                linearRate, compiledRate, compiledRate / linearRate, trieRate);
+        out.printf("        %.1f%% of the routes matched a rule, %.1f%% denied, %d mismatches against the linear evaluation in %d routes%s%n",
+                100.0 * matched / lookups, 100.0 * denied / lookups, mismatches, checked, sink == 42 ? " " : "");
+
+        // 3. export
+        RIPPacket table = RoverManager.getInstance().getmRIPPacket();
+        table.setTriggeredUpdateEnabled(false);
+        for(int r = 0; r < routes; r++) {
+            // inside 10.0.0.0/8, where the rules are
+            table.addEntry(BenchSupport.route((10 << 24) | (r << 8), 24, neighbor(r % NEIGHBORS), 2));
+        }
+        int encodes = 50;
+        double[] encodeMillis = new double[2];
+        int[] datagrams = new int[2];
+        for(int withPolicy = 0; withPolicy < 2; withPolicy++) {
+            RoutePolicy.getInstance().setPolicy(withPolicy == 0 ? RoutePolicy.Policy.PERMIT_ALL : policy);
+            for(int round = 0; round < 2; round++) {
+                start = System.nanoTime();
+                for(int i = 0; i < encodes; i++) {
+                    datagrams[withPolicy] = table.toByteArrays(RIPPacket.COMMAND_RESPONSE).size();
+                }
+                encodeMillis[withPolicy] = (System.nanoTime() - start) / 1e6 / encodes;
+            }
+        }
+        out.printf("export of %d routes: without policy %.2f ms (%d datagrams) | with policy %.2f ms (%d datagrams)%n",
+                routes, encodeMillis[0], datagrams[0], encodeMillis[1], datagrams[1]);
+
+        // 4. hot reload
+        Files.write(file.toPath(), lines, StandardCharsets.US_ASCII);
+        RoutePolicy.getInstance().reloadIfChanged();
+        Thread router = new Thread(() -> {
+            Random picks = new Random(1);
+            long last = System.nanoTime();
+            while(isRunning) {
+                int r = picks.nextInt(routes);
+                int network = (10 << 24) | (r << 8);
+                RoutePolicy.Direction current = RoutePolicy.getInstance().getImport();
+                if(!current.isDeny(current.match(neighbor(r % NEIGHBORS), network, 24))) {
+                    synchronized (table) {
+                        RoutingTableEntry entry = table.findEntry(Helper.parseIntToIpAddress(network), RoutingTableEntry.SUBNET_MASK);
+                        if(entry != null && entry.getMetric() < RIPPacket.METRIC_UNREACHABLE) {
+                            entry.setMetric(2 + (r & 1));
+                        }
+                    }
+                }
+                long now = System.nanoTime();
+                longestStall = Math.max(longestStall, now - last);
+                last = now;
+            }
+        }, "router");
+        router.start();
+        Thread.sleep(WINDOW_IN_MILLIS);
+        double quietStall = longestStall / 1e6;
+        longestStall = 0;
+        long reloadNanos = 0;
+        for(int i = 0; i < reloads; i++) {
+            Files.write(file.toPath(), randomRules(random, rules), StandardCharsets.US_ASCII);
+            // the modification time has a coarse granularity on some file systems
+            file.setLastModified(System.currentTimeMillis() + 1000L * (i + 1));
+            start = System.nanoTime();
+            if(!RoutePolicy.getInstance().reloadIfChanged()) {
+                out.println("reload " + i + " did not take effect");
+            }
+            reloadNanos += System.nanoTime() - start;
+            Thread.sleep(WINDOW_IN_MILLIS / reloads);
+        }
+        isRunning = false;
+        router.join();
+        out.printf("hot reload: %.1f ms per reload (read, compile, withdraw denied routes) | longest stall of the update loop %.2f ms while reloading, %.2f ms without%n",
+                reloadNanos / 1e6 / reloads, longestStall / 1e6, quietStall);
+        out.printf("%s%n", RouterStatistics.getInstance());
+        out.flush();
+        System.exit(0);
+    }
+
+    private static String neighbor(int n) {
+        return n == NEIGHBORS ? null : "192.0.2." + (1 + n / 4) + ":" + (5000 + n);
+    }
+
+    /**
+     * Return the first rule matching the route, -1 if none does
+     */
+    private static int linearMatch(List<RoutePolicy.Rule> rules, String neighbor, int network, int prefixLength) {
+        for(int i = 0; i < rules.size(); i++) {
+            if(rules.get(i).matches(neighbor, network, prefixLength)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return random import and export rules inside 10.0.0.0/8, a tenth of them bound to a
+     * neighbor or to a neighbor address
+     */
+    private static List<String> randomRules(Random random, int count) {
+        List<String> lines = new ArrayList<>();
+        lines.add("# " + count + " random rules");
+        for(int i = 0; i < count; i++) {
+            int length = 12 + random.nextInt(13);
+            int network = ((10 << 24) | random.nextInt(1 << 24)) & Helper.prefixLengthToMask(length);
+            boolean isDeny = random.nextInt(3) == 0;
+            StringBuilder rule = new StringBuilder(i % 5 == 4 ? "export" : "import")
+                    .append(isDeny ? " deny " : " permit ")
+                    .append(Helper.parseIntToIpAddress(network)).append('/').append(length);
+            switch (random.nextInt(4)) {
+                case 0:
+                    break;
+                case 1:
+                    rule.append(" le ").append(length + random.nextInt(33 - length));
+                    break;
+                case 2:
+                    rule.append(" ge ").append(length + random.nextInt(33 - length));
+                    break;
+                default:
+                    int ge = length + random.nextInt(33 - length);
+                    rule.append(" ge ").append(ge).append(" le ").append(ge + random.nextInt(33 - ge));
+            }
+            if(random.nextInt(10) == 0) {
+                String neighbor = neighbor(random.nextInt(NEIGHBORS));
+                rule.append(" neighbor ").append(random.nextBoolean() ? neighbor : Helper.parseNeighborAddress(neighbor));
+            }
+            if(!isDeny && random.nextBoolean()) {
+                rule.append(" offset ").append(random.nextInt(5) - 1);
+            }
+            if(!isDeny && random.nextInt(4) == 0) {
+                rule.append(" tag ").append(random.nextInt(65536));
+            }
+            lines.add(rule.toString());
+        }
+        return lines;
+    }
+}
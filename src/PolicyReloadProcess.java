@@ -0,0 +1,37 @@
+/**
+ * {@link PolicyReloadProcess}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+/**
+ * Checks the policy file for changes once a second
+ */
+public class PolicyReloadProcess extends ServiceProcess {
+    private static final int CHECK_INTERVAL_IN_MILLIS = 1000;
+
+    public PolicyReloadProcess() {
+        super("policy", 10 * CHECK_INTERVAL_IN_MILLIS);
+    }
+
+    @Override
+    protected void serve()   {
+        while(isRunning()) {
+            heartbeat();
+            RoutePolicy.getInstance().reloadIfChanged();
+            try {
+                sleep(CHECK_INTERVAL_IN_MILLIS);
+            } catch (InterruptedException ex) {
+                // asked to stop
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * {@link PrefixTrie}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled prefix set: a binary trie over the network bits of the rules in which every
+ * node knows, for every route prefix length 0..32, the first rule that matches a route
+ * reaching that node. The ge/le ranges of a rule are written into the node of its prefix
+ * and pushed down to all the nodes below it when the trie is built, so a route is matched
+ * by walking its network bits once (at most prefix length steps, fewer where the trie ends)
+ * and reading a single entry, whatever the number of rules.
+ *
+ * The trie is immutable and held in flat int arrays, it is built once per policy.
+ */
+public class PrefixTrie {
+    public static final PrefixTrie EMPTY = new PrefixTrie(new int[] {0}, new int[] {0}, new int[] {0}, emptyRow());
+
+    private static final int NONE = Integer.MAX_VALUE;
+    private static final int ROW = 33;
+
+    // child node indexes, 0 is the root and never a child
+    private final int[] zero;
+    private final int[] one;
+    // node -> offset of its row in firsts
+    private final int[] row;
+    // rows of ROW entries: route prefix length -> index of the first matching rule
+    private final int[] firsts;
+
+    private PrefixTrie(int[] zero, int[] one, int[] row, int[] firsts) {
+        this.zero = zero;
+        this.one = one;
+        this.row = row;
+        this.firsts = firsts;
+    }
+
+    private static int[] emptyRow() {
+        int[] row = new int[ROW];
+        Arrays.fill(row, NONE);
+        return row;
+    }
+
+    /**
+     * Build the trie of the given rules
+     * @param rules     the rules of one direction, in order
+     * @param indexes   the positions (in rules) of the rules that go into this trie, ascending
+     */
+    public static PrefixTrie compile(List<RoutePolicy.Rule> rules, List<Integer> indexes) {
+        if(indexes.isEmpty()) {
+            return EMPTY;
+        }
+        int capacity = 64;
+        int[] zero = new int[capacity];
+        int[] one = new int[capacity];
+        // the rules of each node as a row, null for nodes that have none
+        int[][] own = new int[capacity][];
+        int nodes = 1;
+        for(int index: indexes) {
+            RoutePolicy.Rule rule = rules.get(index);
+            int node = 0;
+            for(int depth = 0; depth < rule.getLength(); depth++) {
+                boolean isOne = (rule.getNetwork() << depth) < 0;
+                int child = isOne ? one[node] : zero[node];
+                if(child == 0) {
+                    if(nodes == capacity) {
+                        capacity *= 2;
+                        zero = Arrays.copyOf(zero, capacity);
+                        one = Arrays.copyOf(one, capacity);
+                        own = Arrays.copyOf(own, capacity);
+                    }
+                    child = nodes++;
+                    if(isOne) {
+                        one[node] = child;
+                    } else {
+                        zero[node] = child;
+                    }
+                }
+                node = child;
+            }
+            if(own[node] == null) {
+                own[node] = emptyRow();
+            }
+            for(int length = rule.getGe(); length <= rule.getLe(); length++) {
+                own[node][length] = Math.min(own[node][length], index);
+            }
+        }
+
+        // push the rows down: a node sees its own rules and those of every node above it.
+        // The nodes are numbered in creation order, a parent always before its children
+        int[] row = new int[nodes];
+        int[] firsts = new int[ROW * (1 + countRows(own, nodes))];
+        Arrays.fill(firsts, NONE);
+        int rows = 1;
+        if(own[0] != null) {
+            System.arraycopy(own[0], 0, firsts, 0, ROW);
+        }
+        for(int node = 0; node < nodes; node++) {
+            for(int side = 0; side < 2; side++) {
+                int child = side == 0 ? zero[node] : one[node];
+                if(child == 0) {
+                    continue;
+                }
+                if(own[child] == null) {
+                    // nothing new below this point, share the row of the parent
+                    row[child] = row[node];
+                } else {
+                    row[child] = ROW * rows++;
+                    for(int length = 0; length < ROW; length++) {
+                        firsts[row[child] + length] = Math.min(firsts[row[node] + length], own[child][length]);
+                    }
+                }
+            }
+        }
+        return new PrefixTrie(Arrays.copyOf(zero, nodes), Arrays.copyOf(one, nodes), row, Arrays.copyOf(firsts, ROW * rows));
+    }
+
+    private static int countRows(int[][] own, int nodes) {
+        int count = 0;
+        for(int node = 0; node < nodes; node++) {
+            if(own[node] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the index of the first rule matching the route, -1 if none does
+     * @param network       the network of the route
+     * @param prefixLength  the prefix length of the route
+     */
+    public int match(int network, int prefixLength) {
+        int node = 0;
+        for(int depth = 0; depth < prefixLength; depth++) {
+            int child = (network << depth) < 0 ? one[node] : zero[node];
+            if(child == 0) {
+                break;
+            }
+            node = child;
+        }
+        int rule = firsts[row[node] + prefixLength];
+        return rule == NONE ? -1 : rule;
+    }
+
+    /**
+     * Return the number of nodes, for the benchmark
+     */
+    public int size() {
+        return row.length;
+    }
+}
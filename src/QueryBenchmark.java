@@ -0,0 +1,255 @@
+/**
+ * {@link QueryBenchmark}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of the {@link QueryService}. A table of /24 routes (with a /16 covering every
+ * other block) is kept changing by a writer thread while -
+ * 1.   in-process: longest match lookups through the locked table ({@link RIPPacket#selectNextHop})
+ *      are compared with lookups on the published snapshot, both racing the writer
+ * 2.   over TCP: several clients send LOOKUP requests pipelined at increasing depths and
+ *      report the achieved queries per second and the latency of a batch
+ *
+ * EXECUTING:
+ *      java QueryBenchmark [routes] [clients] [seconds per step] [changes per second]
+ */
+public class QueryBenchmark {
+    private static final int[] PIPELINE_DEPTHS = {1, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        int routes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int changesPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        PrintStream out = BenchSupport.silenceStdout();
+
+        RoverManager.getInstance().setRoverId("1");
+        RIPPacket table = RoverManager.getInstance().getmRIPPacket();
+        List<RoutingTableEntry> entries = buildTable(table, routes);
+        long start = System.nanoTime();
+        table.invalidateSnapshot();
+        table.publishSnapshot();
+        double first = (System.nanoTime() - start) / 1e6;
+        // the steady state: one route changed per snapshot
+        int publishes = 1000;
+        start = System.nanoTime();
+        for(int i = 0; i < publishes; i++) {
+            synchronized (table) {
+                RoutingTableEntry entry = entries.get(i % entries.size());
+                entry.setMetric(3);
+                entry.setMetric(2);
+                table.invalidateSnapshot(Collections.singletonList(entry));
+            }
+            table.publishSnapshot();
+        }
+        out.printf("table of %d routes, publishing a snapshot: first %.2f ms, after one change %.3f ms%n",
+                table.getmList().size(), first, (System.nanoTime() - start) / 1e6 / publishes);
+
+        // the writer: flip the metric of a random route, like a received update
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        AtomicLong changes = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(1);
+            long interval = changesPerSecond > 0 ? 1_000_000_000L / changesPerSecond : Long.MAX_VALUE;
+            long next = System.nanoTime();
+            while(isRunning.get()) {
+                synchronized (table) {
+                    RoutingTableEntry entry = entries.get(random.nextInt(entries.size()));
+                    entry.setMetric(entry.getMetric() == 2 ? 3 : 2);
+                    table.invalidateSnapshot(Collections.singletonList(entry));
+                }
+                table.publishSnapshot();
+                changes.incrementAndGet();
+                next += interval;
+                long sleep = next - System.nanoTime();
+                if(sleep > 0) {
+                    try {
+                        Thread.sleep(sleep / 1_000_000, (int)(sleep % 1_000_000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        writer.setDaemon(true);
+        writer.start();
+
+        int[] destinations = new int[4096];
+        Random random = new Random(2);
+        for(int i = 0; i < destinations.length; i++) {
+            // mostly hits, every 16th address misses the table
+            destinations[i] = i % 16 == 0 ? (12 << 24) | random.nextInt(1 << 24)
+                    : (11 << 24) | (random.nextInt(Math.max(1, routes)) << 8) | random.nextInt(256);
+        }
+        measureInProcess(out, table, destinations, seconds);
+
+        QueryService service = new QueryService(0, table);
+        service.setDaemon(true);
+        service.start();
+        String[] requests = new String[destinations.length];
+        for(int i = 0; i < requests.length; i++) {
+            requests[i] = "LOOKUP " + Helper.parseIntToIpAddress(destinations[i]) + "\n";
+        }
+        for(int depth: PIPELINE_DEPTHS) {
+            measureOverTcp(out, service.getPort(), requests, clients, depth, seconds);
+        }
+
+        // one full dump for scale
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), service.getPort());
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+            start = System.nanoTime();
+            socket.getOutputStream().write("DUMP\n".getBytes(StandardCharsets.US_ASCII));
+            int lines = 0;
+            while(!"END".equals(in.readLine())) {
+                lines++;
+            }
+            out.printf("DUMP of %d lines in %.2f ms%n", lines, (System.nanoTime() - start) / 1e6);
+        }
+        isRunning.set(false);
+        out.printf("the writer applied %d changes meanwhile%n", changes.get());
+        service.close();
+        out.flush();
+        System.exit(0);
+    }
+
+    /**
+     * Fill the table with /24 routes in 11.0.0.0/8 and a /16 for every other 11.k.0.0 block
+     */
+    private static List<RoutingTableEntry> buildTable(RIPPacket table, int routes) {
+        List<RoutingTableEntry> entries = new ArrayList<>();
+        synchronized (table) {
+            for(int r = 0; r < routes; r++) {
+                entries.add(addRoute(table, BenchSupport.network(r), 24, r));
+                if((r & 0xFF) == 0 && ((r >> 8) & 1) == 0) {
+                    entries.add(addRoute(table, BenchSupport.network(r), 16, r));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static RoutingTableEntry addRoute(RIPPacket table, int network, int prefixLength, int r) {
+        RoutingTableEntry entry = BenchSupport.route(network, prefixLength, "192.0.2." + (1 + r % 50) + ":520", 2);
+        table.addEntry(entry);
+        return entry;
+    }
+
+    /**
+     * Longest match lookups in this process, through the table lock and through the snapshot
+     */
+    private static void measureInProcess(PrintStream out, RIPPacket table, int[] destinations, int seconds) {
+        String[] addresses = new String[destinations.length];
+        for(int i = 0; i < addresses.length; i++) {
+            addresses[i] = Helper.parseIntToIpAddress(destinations[i]);
+        }
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long lookups = 0;
+        long start = System.nanoTime();
+        while(System.nanoTime() < deadline) {
+            table.selectNextHop(addresses[(int)(lookups++ & (addresses.length - 1))], 0);
+        }
+        double locked = lookups / ((System.nanoTime() - start) / 1e9);
+
+        deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        lookups = 0;
+        start = System.nanoTime();
+        while(System.nanoTime() < deadline) {
+            table.getSnapshot().lookup(destinations[(int)(lookups++ & (destinations.length - 1))]);
+        }
+        double snapshot = lookups / ((System.nanoTime() - start) / 1e9);
+        out.printf("in-process lookups: locked table %12.0f /s | snapshot %12.0f /s%n", locked, snapshot);
+    }
+
+    /**
+     * Run the clients for one pipeline depth and report throughput and batch latency
+     */
+    private static void measureOverTcp(PrintStream out, int port, String[] requests, int clients, int depth, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        long[][] latencies = new long[clients][];
+        int[] batches = new int[clients];
+        for(int c = 0; c < clients; c++) {
+            final int client = c;
+            Thread thread = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+                    socket.setTcpNoDelay(true);
+                    int next = client * 997;
+                    while(System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        for(int i = 0; i < depth; i++) {
+                            writer.write(requests[next++ & (requests.length - 1)]);
+                        }
+                        writer.flush();
+                        for(int i = 0; i < depth; i++) {
+                            in.readLine();
+                        }
+                        if(count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+                latencies[client] = Arrays.copyOf(samples, count);
+                batches[client] = count;
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for(Thread thread: threads) {
+            thread.join();
+        }
+        int total = 0;
+        for(int count: batches) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int at = 0;
+        for(long[] samples: latencies) {
+            System.arraycopy(samples, 0, all, at, samples.length);
+            at += samples.length;
+        }
+        Arrays.sort(all);
+        out.printf("tcp clients %d depth %3d | %10.0f queries/s | batch p50 %7.1f us p99 %7.1f us%n",
+                clients, depth, (double)total * depth / seconds,
+                percentile(all, 0.50) / 1e3, percentile(all, 0.99) / 1e3);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int)(p * sorted.length))];
+    }
+}
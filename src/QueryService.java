@@ -0,0 +1,287 @@
+/**
+ * {@link QueryService}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read only query endpoint on the loopback interface, so that operators and local
+ * processes do not have to scrape the tables printed on stdout. Every answer comes
+ * from the latest {@link TableSnapshot}, published by the writers of the table; a query
+ * never takes the table lock.
+ *
+ * PROTOCOL: one ASCII request per line, answered in order. A client may send any number
+ * of requests without waiting, the answers are flushed once the pending requests are served
+ *      DUMP                ->  TABLE <version> <routes>, one ROUTE line per route, END
+ *      GET <cidr>          ->  ROUTE line of that exact network or NONE
+ *      LOOKUP <ip>         ->  ROUTE line of the longest usable match or NONE
+ *      NEIGHBORS           ->  NEIGHBORS <version> <neighbors>, one NEIGHBOR line each, END
+ *      HEALTH              ->  HEALTH <ok|degraded> <services>, one SERVICE line each, END
+ *      INTERFACES          ->  INTERFACES <interfaces>, one INTERFACE line each, END
+ *      QUIT                ->  closes the connection
+ *      anything else       ->  ERROR <reason>
+ * where
+ *      ROUTE <cidr> <metric> <next hops, comma separated, or self> [suppressed]
+ *      NEIGHBOR <ip:port> <up|down> <seconds since last heard or -> <routes via it>
+ *      SERVICE <name> <NEW|RUNNING|STOPPED|FAILED> <healthy|unhealthy>
+ *      INTERFACE <name> <neighbors heard on it> <datagrams received> <datagrams sent>
+ *
+ * At most MAX_CONNECTIONS clients are served at a time, a further one is answered
+ * 'ERROR busy' and closed. A client that sends nothing for IDLE_TIMEOUT_IN_MILLIS is
+ * closed, so that idle clients do not hold on to the connection threads.
+ *
+ * Enabled with -Drip.query.port=<port>, e.g. 'printf "LOOKUP 10.0.3.7\n" | nc 127.0.0.1 5521'
+ */
+public class QueryService extends ServiceProcess {
+    public static final int MAX_CONNECTIONS = 8;
+    public static final int IDLE_TIMEOUT_IN_MILLIS = 30000;
+    private ServerSocket serverSocket;
+    private RIPPacket mRIPPacket;
+    // connections come and go, they do not take a thread from the shared pool
+    private final ThreadPoolExecutor connections;
+
+    public QueryService(int port, RIPPacket mRIPPacket) throws IOException {
+        super("query", 0);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.mRIPPacket = mRIPPacket;
+        // no queue: a connection gets a thread right away or is turned down
+        this.connections = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+            Thread thread = new Thread(task, "query-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Return the port the service listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop accepting connections, the open ones are closed once their pending requests are served
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdown();
+    }
+
+    @Override
+    protected void onStop() {
+        try {
+            close();
+        } catch (IOException ex) {
+            // closed anyway
+        }
+    }
+
+    /**
+     * A closed server socket cannot be opened again
+     */
+    @Override
+    public boolean isRestartable() {
+        return !serverSocket.isClosed();
+    }
+
+    @Override
+    protected void serve()   {
+        Log.router(RoverManager.getInstance().getFullRoverId() + ": answering queries on 127.0.0.1:" + getPort());
+        while(isRunning() && !serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    connections.execute(new QueryConnection(socket, mRIPPacket));
+                } catch (RejectedExecutionException ex) {
+                    refuse(socket);
+                }
+            } catch (IOException ex) {
+                if(!serverSocket.isClosed()) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn down a client while MAX_CONNECTIONS others are being served
+     */
+    private static void refuse(Socket socket) {
+        try(Socket client = socket) {
+            client.getOutputStream().write("ERROR busy\n".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException ex) {
+            // the client went away
+        }
+    }
+
+    /**
+     * Answer one request from the given snapshot
+     * @param request       the request line
+     * @param snapshot      the routing table to answer from
+     * @param lastHeard     neighbor ("ip:port") -> time (s) of its last datagram
+     * @param out           where the answer is written to
+     * @return              false if the client asked to close the connection
+     */
+    public static boolean answer(String request, TableSnapshot snapshot, Map<String, Long> lastHeard, Writer out) throws IOException {
+        String[] words = request.trim().split("\\s+");
+        String command = words[0].toUpperCase();
+        try {
+            switch (command) {
+                case "DUMP":
+                    out.write("TABLE " + snapshot.getVersion() + " "
+                            + (snapshot.getLocalRoutes().size() + snapshot.getRoutes().size()) + "\n");
+                    for(TableSnapshot.Route route: snapshot.getLocalRoutes()) {
+                        writeRoute(route, out);
+                    }
+                    for(TableSnapshot.Route route: snapshot.getRoutes()) {
+                        writeRoute(route, out);
+                    }
+                    out.write("END\n");
+                    return true;
+                case "GET":
+                    if(words.length != 2) {
+                        break;
+                    }
+                    int[] cidr = Helper.parseCIDR(words[1]);
+                    writeRoute(snapshot.get(cidr[0], cidr[1]), out);
+                    return true;
+                case "LOOKUP":
+                    if(words.length != 2) {
+                        break;
+                    }
+                    writeRoute(snapshot.lookup(Helper.parseIpAddressToInt(words[1])), out);
+                    return true;
+                case "NEIGHBORS":
+                    Map<String, Integer> routesPerNeighbor = snapshot.getRoutesPerNeighbor();
+                    Set<String> neighbors = new LinkedHashSet<>(lastHeard.keySet());
+                    neighbors.addAll(routesPerNeighbor.keySet());
+                    out.write("NEIGHBORS " + snapshot.getVersion() + " " + neighbors.size() + "\n");
+                    long now = System.currentTimeMillis() / 1000;
+                    for(String neighbor: neighbors) {
+                        Long heard = lastHeard.get(neighbor);
+                        out.write("NEIGHBOR " + neighbor
+                                + (heard != null ? " up " + (now - heard) : " down -")
+                                + " " + routesPerNeighbor.getOrDefault(neighbor, 0) + "\n");
+                    }
+                    out.write("END\n");
+                    return true;
+                case "HEALTH":
+                    List<ServiceProcess> services = LifecycleManager.getInstance().getServices();
+                    StringBuilder lines = new StringBuilder();
+                    boolean isHealthy = true;
+                    for(ServiceProcess service: services) {
+                        boolean isServiceHealthy = service.isHealthy();
+                        isHealthy &= isServiceHealthy;
+                        lines.append("SERVICE ").append(service.getName()).append(' ').append(service.getServiceState())
+                                .append(isServiceHealthy ? " healthy\n" : " unhealthy\n");
+                    }
+                    out.write("HEALTH " + (isHealthy ? "ok " : "degraded ") + services.size() + "\n");
+                    out.write(lines.toString());
+                    out.write("END\n");
+                    return true;
+                case "INTERFACES":
+                    List<RouterInterface> interfaces = RoverManager.getInstance().getInterfaces();
+                    out.write("INTERFACES " + interfaces.size() + "\n");
+                    for(RouterInterface routerInterface: interfaces) {
+                        out.write("INTERFACE " + routerInterface.getName()
+                                + " " + routerInterface.getNeighbors().size()
+                                + " " + routerInterface.getPacketsReceived().sum()
+                                + " " + routerInterface.getPacketsSent().sum() + "\n");
+                    }
+                    out.write("END\n");
+                    return true;
+                case "QUIT":
+                    return false;
+                default:
+                    out.write("ERROR unknown command\n");
+                    return true;
+            }
+        } catch (IllegalArgumentException ex) {
+            out.write("ERROR " + ex.getMessage() + "\n");
+            return true;
+        }
+        out.write("ERROR usage: " + command + " <argument>\n");
+        return true;
+    }
+
+    private static void writeRoute(TableSnapshot.Route route, Writer out) throws IOException {
+        if(route == null) {
+            out.write("NONE\n");
+            return;
+        }
+        out.write("ROUTE ");
+        out.write(route.getCIDR());
+        out.write(" ");
+        out.write(String.valueOf(route.getMetric()));
+        out.write(" ");
+        out.write(route.getNextHops().isEmpty() ? "self" : String.join(",", route.getNextHops()));
+        out.write(route.isSuppressed() ? " suppressed\n" : "\n");
+    }
+}
+
+/**
+ * One client of the {@link QueryService}. Requests are read and answered in order,
+ * the answers are buffered and flushed only when no further request is waiting
+ */
+class QueryConnection implements Runnable {
+    private Socket socket;
+    private RIPPacket mRIPPacket;
+
+    public QueryConnection(Socket socket, RIPPacket mRIPPacket) {
+        this.socket = socket;
+        this.mRIPPacket = mRIPPacket;
+    }
+
+    @Override
+    public void run()   {
+        try(Socket client = socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.US_ASCII), 16 * 1024)) {
+            client.setTcpNoDelay(true);
+            // an idle client is closed, a SocketTimeoutException ends the loop below
+            client.setSoTimeout(QueryService.IDLE_TIMEOUT_IN_MILLIS);
+            Map<String, Long> lastHeard = RoverManager.getInstance().getTimeoutManagementProcess().getLastHeard();
+            String request;
+            while((request = in.readLine()) != null) {
+                if(request.trim().isEmpty()) {
+                    continue;
+                }
+                if(!QueryService.answer(request, mRIPPacket.getSnapshot(), lastHeard, out)) {
+                    break;
+                }
+                // answer a pipelined batch with as few writes as possible
+                if(!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException ex) {
+            // the client went away or stayed idle
+        }
+    }
+}
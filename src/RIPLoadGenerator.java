@@ -0,0 +1,377 @@
+/**
+ * {@link RIPLoadGenerator}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A standalone load generator for capacity planning. It emulates a number of synthetic
+ * neighbors, each with its own socket (and therefore its own identity), that send RIP
+ * responses in the regular wire format ({@link RIPPacket#toByteArray}) to a rover -
+ * 1.   the table size, the aggregate packet rate, the churn (fraction of a neighbor's
+ *      routes whose metric changes with every update) and the fraction of malformed
+ *      packets are configurable
+ * 2.   by default the target rover runs inside this process on the given port, which
+ *      lets the generator read its counters and report the socket drop rate, the
+ *      backlog of the ingress queue, what it coalesced or dropped and the route install latency. The latency is
+ *      measured with probe routes (198.18.0.0/15 host routes) that are announced
+ *      by the neighbors and polled for in the routing table
+ * 3.   in sweep mode the rate is doubled every step until packets are dropped, probes
+ *      are lost or the backlog does not drain, and the last good rate is reported as
+ *      the sustainable rate
+ *
+ * EXECUTING:
+ *      java [-Dload.*=...] RIPLoadGenerator <target_ip> <port>
+ *      load.neighbors  -   synthetic neighbors                     (default 100)
+ *      load.routes     -   routes advertised per neighbor          (default 25)
+ *      load.rate       -   packets per second, all neighbors       (default 1000)
+ *      load.duration   -   seconds per step                        (default 10)
+ *      load.churn      -   fraction of routes changed per update   (default 0.1)
+ *      load.malformed  -   fraction of malformed packets           (default 0.01)
+ *      load.group      -   multicast group joined by the in-process rover (default 224.0.0.9), the
+ *                          target may be this group or a unicast address such as 127.0.0.1
+ *      load.external   -   true to load a rover running elsewhere, only the send side is reported
+ *      load.sweep      -   true to search for the sustainable rate
+ */
+public class RIPLoadGenerator {
+    private static final String PROPERTY_NEIGHBORS = "load.neighbors";
+    private static final String PROPERTY_ROUTES = "load.routes";
+    private static final String PROPERTY_RATE = "load.rate";
+    private static final String PROPERTY_DURATION = "load.duration";
+    private static final String PROPERTY_CHURN = "load.churn";
+    private static final String PROPERTY_MALFORMED = "load.malformed";
+    private static final String PROPERTY_GROUP = "load.group";
+    private static final String PROPERTY_EXTERNAL = "load.external";
+    private static final String PROPERTY_SWEEP = "load.sweep";
+
+    // probe host routes are taken from the benchmarking range 198.18.0.0/15
+    private static final int PROBE_BASE = (198 << 24) | (18 << 16);
+    private static final int PROBES_PER_SECOND = 20;
+    private static final String HOST_MASK = "255.255.255.255";
+    // a step is good while less than 1% of the packets are dropped
+    private static final double MAX_DROP_RATIO = 0.01;
+    private static final int MAX_SWEEP_STEPS = 12;
+
+    private final InetAddress target;
+    private final int port;
+    private final int neighbors;
+    private final int routes;
+    private final double churn;
+    private final double malformed;
+    private final boolean external;
+    private final Random random = new Random(42);
+
+    private DatagramSocket[] sockets;
+    // the encoded response datagrams of each neighbor, patched in place on churn
+    private List<List<byte[]>> datagrams = new ArrayList<>();
+    private int nextProbe = 0;
+    private final ConcurrentLinkedQueue<long[]> pendingProbes = new ConcurrentLinkedQueue<>();
+    private final List<Long> probeLatencies = new ArrayList<>();
+    private volatile int maxBacklog = 0;
+
+    public RIPLoadGenerator(InetAddress target, int port) {
+        this.target = target;
+        this.port = port;
+        this.neighbors = RouterConfig.getInt(PROPERTY_NEIGHBORS, 100);
+        this.routes = RouterConfig.getInt(PROPERTY_ROUTES, 25);
+        this.churn = RouterConfig.getDouble(PROPERTY_CHURN, 0.1);
+        this.malformed = RouterConfig.getDouble(PROPERTY_MALFORMED, 0.01);
+        this.external = Boolean.getBoolean(PROPERTY_EXTERNAL);
+    }
+
+    /**
+     * Open one socket per synthetic neighbor and encode its routing table.
+     * Neighbor n advertises the /24s 11.x.y.0 numbered [n * routes, (n + 1) * routes)
+     */
+    private void prepareNeighbors() throws IOException {
+        sockets = new DatagramSocket[neighbors];
+        RIPPacket encoder = new RIPPacket();
+        for(int n = 0; n < neighbors; n++) {
+            sockets[n] = new DatagramSocket();
+            List<RoutingTableEntry> table = new ArrayList<>();
+            for(int r = 0; r < routes; r++) {
+                table.add(BenchSupport.route(BenchSupport.network(n * routes + r), 24, null, 1 + random.nextInt(14)));
+            }
+            List<byte[]> encoded = new ArrayList<>();
+            for(int from = 0; from < table.size(); from += RIPPacket.MAX_RTE_PER_PACKET) {
+                int to = Math.min(table.size(), from + RIPPacket.MAX_RTE_PER_PACKET);
+                encoded.add(encoder.toByteArray(RIPPacket.COMMAND_RESPONSE, table.subList(from, to)));
+            }
+            datagrams.add(encoded);
+        }
+    }
+
+    /**
+     * Start a rover inside this process, listening on the target port
+     */
+    private void startRover() throws IOException {
+        RoverManager.getInstance().setRoverId("1");
+        MyThreadPoolExecutorService.getService().execute(new MainRouterProcess(System.getProperty(PROPERTY_GROUP, "224.0.0.9"), String.valueOf(port)));
+    }
+
+    /**
+     * Change the metric of a fraction of the routes of a neighbor by patching the
+     * low byte of the metric field of the encoded RTEs
+     */
+    private void applyChurn(int neighbor) {
+        int changes = (int)Math.round(churn * routes);
+        List<byte[]> encoded = datagrams.get(neighbor);
+        for(int c = 0; c < changes; c++) {
+            int r = random.nextInt(routes);
+            byte[] datagram = encoded.get(r / RIPPacket.MAX_RTE_PER_PACKET);
+            datagram[4 + (r % RIPPacket.MAX_RTE_PER_PACKET) * 20 + 19] = (byte)(1 + random.nextInt(14));
+        }
+    }
+
+    /**
+     * Return a corrupted copy of a datagram: truncated, bad version, bad address
+     * family, metric out of range or a non contiguous mask
+     */
+    private byte[] corrupt(byte[] datagram) {
+        byte[] copy = Arrays.copyOf(datagram, datagram.length);
+        switch(random.nextInt(5)) {
+            case 0:
+                return Arrays.copyOf(datagram, Math.max(4, datagram.length - 7));
+            case 1:
+                copy[1] = 0;
+                break;
+            case 2:
+                copy[5] = 9;
+                break;
+            case 3:
+                copy[23] = 99;
+                break;
+            default:
+                copy[12] = (byte)255;
+                copy[13] = 0;
+                copy[14] = (byte)255;
+                copy[15] = 0;
+        }
+        return copy;
+    }
+
+    /**
+     * Announce a fresh probe host route from the given neighbor
+     */
+    private void sendProbe(int neighbor) throws IOException {
+        int probe = PROBE_BASE | (nextProbe++ & 0x1FFFF);
+        List<RoutingTableEntry> table = new ArrayList<>();
+        table.add(BenchSupport.route(probe, 32, null, 1));
+        byte[] buff = new RIPPacket().toByteArray(RIPPacket.COMMAND_RESPONSE, table);
+        pendingProbes.add(new long[]{probe, System.nanoTime()});
+        sockets[neighbor].send(new DatagramPacket(buff, buff.length, target, port));
+    }
+
+    /**
+     * Poll the in-process routing table for the pending probes and sample the
+     * backlog of the ingress queue until interrupted
+     */
+    private Thread startObserver() {
+        Thread observer = new Thread(() -> {
+            RIPPacket table = RoverManager.getInstance().getmRIPPacket();
+            IngressQueue ingressQueue = RoverManager.getInstance().getIngressQueue();
+            while(!Thread.currentThread().isInterrupted()) {
+                for(long[] probe: pendingProbes) {
+                    if(table.findEntry(Helper.parseIntToIpAddress((int)probe[0]), HOST_MASK) != null) {
+                        synchronized (probeLatencies) {
+                            probeLatencies.add(System.nanoTime() - probe[1]);
+                        }
+                        pendingProbes.remove(probe);
+                    }
+                }
+                maxBacklog = Math.max(maxBacklog, ingressQueue.size());
+                LockSupport.parkNanos(200_000);
+            }
+        });
+        observer.setDaemon(true);
+        observer.start();
+        return observer;
+    }
+
+    /**
+     * Send at the given aggregate rate for the given number of seconds
+     * @return  the number of datagrams sent
+     */
+    private long runStep(int rate, int seconds) throws IOException {
+        long intervalNanos = 1_000_000_000L / Math.max(1, rate);
+        long probeEvery = Math.max(1, rate / PROBES_PER_SECOND);
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long sent = 0;
+        int neighbor = 0;
+        int[] nextDatagram = new int[neighbors];
+        while(System.nanoTime() < end) {
+            long due = start + sent * intervalNanos;
+            long now = System.nanoTime();
+            if(now < due) {
+                LockSupport.parkNanos(due - now);
+                continue;
+            }
+            if(sent % probeEvery == 0 && !external) {
+                sendProbe(neighbor);
+            } else {
+                List<byte[]> encoded = datagrams.get(neighbor);
+                int index = nextDatagram[neighbor];
+                if(index == 0) {
+                    applyChurn(neighbor);
+                }
+                nextDatagram[neighbor] = (index + 1) % encoded.size();
+                byte[] buff = encoded.get(index);
+                if(random.nextDouble() < malformed) {
+                    buff = corrupt(buff);
+                }
+                sockets[neighbor].send(new DatagramPacket(buff, buff.length, target, port));
+            }
+            sent++;
+            neighbor = (neighbor + 1) % neighbors;
+        }
+        return sent;
+    }
+
+    /**
+     * Wait for the rover to work through everything that was received
+     * @return  true if the backlog drained within the grace period
+     */
+    private boolean awaitDrain(long receivedBefore, long handledBefore) {
+        RouterStatistics statistics = RouterStatistics.getInstance();
+        IngressQueue ingressQueue = RoverManager.getInstance().getIngressQueue();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while(System.nanoTime() < deadline) {
+            if(ingressQueue.size() == 0
+                    && getHandled(statistics) - handledBefore >= statistics.getPacketsReceived().sum() - receivedBefore) {
+                // give the observer a chance to see the last probes
+                LockSupport.parkNanos(10_000_000);
+                return true;
+            }
+            LockSupport.parkNanos(10_000_000);
+        }
+        return false;
+    }
+
+    /**
+     * Return the number of received datagrams the rover is done with: processed,
+     * recognised as its own, coalesced or dropped on overload
+     */
+    private static long getHandled(RouterStatistics statistics) {
+        return statistics.getPacketsProcessed().sum() + statistics.getPacketsFromSelf().sum()
+                + statistics.getPacketsCoalesced().sum() + statistics.getPacketsDropped().sum();
+    }
+
+    /**
+     * Run one step and print its report line
+     * @return  true if the rover kept up with the offered rate
+     */
+    private boolean measure(PrintStream out, int rate, int seconds) throws IOException {
+        RouterStatistics statistics = RouterStatistics.getInstance();
+        long receivedBefore = statistics.getPacketsReceived().sum();
+        long processedBefore = statistics.getPacketsProcessed().sum();
+        long fromSelfBefore = statistics.getPacketsFromSelf().sum();
+        long coalescedBefore = statistics.getPacketsCoalesced().sum();
+        long droppedBefore = statistics.getPacketsDropped().sum();
+        long handledBefore = getHandled(statistics);
+        long malformedBefore = statistics.getPacketsMalformed().sum();
+        synchronized (probeLatencies) {
+            probeLatencies.clear();
+        }
+        maxBacklog = 0;
+
+        long start = System.nanoTime();
+        long sent = runStep(rate, seconds);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        if(external) {
+            out.printf("offered %8d pkt/s | sent %10d | achieved %10.0f pkt/s%n", rate, sent, sent / elapsed);
+            return true;
+        }
+        boolean isDrained = awaitDrain(receivedBefore, handledBefore);
+
+        // leave out the in-process rover's own broadcasts looped back to it
+        long received = statistics.getPacketsReceived().sum() - receivedBefore
+                - (statistics.getPacketsFromSelf().sum() - fromSelfBefore);
+        long processed = statistics.getPacketsProcessed().sum() - processedBefore;
+        long rejected = statistics.getPacketsMalformed().sum() - malformedBefore;
+        long coalesced = statistics.getPacketsCoalesced().sum() - coalescedBefore;
+        long overloaded = statistics.getPacketsDropped().sum() - droppedBefore;
+        // lost on the socket plus dropped by the overload policy, coalescing is not a loss
+        double dropRatio = sent == 0 ? 0 : (Math.max(0, sent - received) + overloaded) / (double)sent;
+        int lostProbes = pendingProbes.size();
+        pendingProbes.clear();
+        long[] latencies;
+        synchronized (probeLatencies) {
+            latencies = probeLatencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        out.printf("offered %8d pkt/s | achieved %9.0f pkt/s | received %9d | processed %9d | malformed %6d"
+                        + " | coalesced %8d | overload drops %8d | dropped %6.2f%% | max backlog %7d | install latency p50 %8.2f ms p99 %8.2f ms max %8.2f ms"
+                        + " | lost probes %d%s%n",
+                rate, sent / elapsed, received, processed, rejected, coalesced, overloaded, dropRatio * 100, maxBacklog,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0),
+                lostProbes, isDrained ? "" : " | backlog did not drain");
+        return isDrained && lostProbes == 0 && dropRatio <= MAX_DROP_RATIO;
+    }
+
+    /**
+     * Return the given percentile of sorted nanosecond samples in milliseconds
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        int index = (int)Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2) {
+            System.out.println("Please enter arguments as <target_ip> <port>. Please refer to the class documentation for the options.");
+            return;
+        }
+        RIPLoadGenerator generator = new RIPLoadGenerator(InetAddress.getByName(args[0]), Integer.parseInt(args[1]));
+        int rate = RouterConfig.getInt(PROPERTY_RATE, 1000);
+        int seconds = RouterConfig.getInt(PROPERTY_DURATION, 10);
+        PrintStream out = System.out;
+        out.println("neighbors " + generator.neighbors + ", routes per neighbor " + generator.routes
+                + ", churn " + generator.churn + ", malformed " + generator.malformed + ", target " + args[0] + ":" + args[1]);
+
+        generator.prepareNeighbors();
+        if(!generator.external) {
+            // the rover prints its table on every change, keep the report readable
+            BenchSupport.silenceStdout();
+            generator.startRover();
+            generator.startObserver();
+            Thread.sleep(500);
+        }
+
+        if(!Boolean.getBoolean(PROPERTY_SWEEP)) {
+            generator.measure(out, rate, seconds);
+        } else {
+            int sustainable = 0;
+            for(int step = 0; step < MAX_SWEEP_STEPS; step++, rate *= 2) {
+                if(!generator.measure(out, rate, seconds)) {
+                    break;
+                }
+                sustainable = rate;
+            }
+            out.println("sustainable rate: " + (sustainable == 0 ? "below " + rate : sustainable) + " pkt/s");
+        }
+        out.flush();
+        System.exit(0);
+    }
+}
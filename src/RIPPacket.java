@@ -17,7 +17,14 @@
  * 3.   Print the current routing table when told to do so by the running {@link RouterProcess}
  */
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 public class RIPPacket {
 
     public static final int METRIC_UNREACHABLE = 16;
@@ -25,12 +32,37 @@ public class RIPPacket {
     public static final String COMMAND_RESPONSE = "2";
     public static final String RIP_VERSION_2 = "2";
     public static final String MUST_BE_ZERO = "0";
+    // RFC 2453: a 504 byte datagram carries at most 25 RTEs
+    public static final int MAX_RTE_PER_PACKET = 25;
 
     private String command;
     private String version;
     private String mustBeZero;
     private String sender;
     private List<RoutingTableEntry> mList = new ArrayList<>();
+    // destination (address/mask) -> entry, keeps lookups constant time for large tables
+    private Map<String, RoutingTableEntry> mIndex = new HashMap<>();
+    // next hop ("ip:port") -> every entry using it, so that a dead neighbor costs O(routes via it)
+    private Map<String, Set<RoutingTableEntry>> mNeighborIndex = new HashMap<>();
+    // entries changed by a neighbor failure, waiting to be sent as a triggered update,
+    // one list per broadcasting process (one per interface)
+    private List<List<RoutingTableEntry>> mTriggeredLists = new ArrayList<>();
+    private boolean isTriggeredUpdateEnabled = !"false".equalsIgnoreCase(System.getProperty(RouterConfig.PROPERTY_TRIGGERED_UPDATES));
+    // print the table on every change, off for the offline tools
+    private boolean isPrintEnabled = true;
+    // the read only copy served to the queries, published by the writers once they released the lock
+    private volatile TableSnapshot mSnapshot = TableSnapshot.EMPTY;
+    // the number of entries of mList handed to the snapshot, and the entries handed over
+    // as suppressed, republished once they are reused
+    private int mRecordedSize = 0;
+    private Set<RoutingTableEntry> mSuppressedEntries = new HashSet<>();
+    // guards the copies of the changed routes waiting to be published, never taken before the table lock
+    private final Object mSnapshotLock = new Object();
+    private boolean isSnapshotReset = false;
+    private List<TableSnapshot.Route> mPendingLocalRoutes = null;
+    private List<TableSnapshot.Route> mPendingAddedRoutes = new ArrayList<>();
+    // in the order they were handed over, a later copy of a route replaces an earlier one
+    private List<TableSnapshot.Route> mPendingChangedRoutes = new ArrayList<>();
 
     public RIPPacket() {
         this.command = COMMAND_REQUEST;
@@ -38,6 +70,9 @@ public class RIPPacket {
         this.mustBeZero = MUST_BE_ZERO;
     }
 
+    /**
+     * @param sender    the neighbor that sent this packet, as its datagram source "ip:port"
+     */
     public RIPPacket(String command, String version, String mustBeZero, String sender,  List<RoutingTableEntry> mList) {
         this.command = command;
         this.version = version;
@@ -52,10 +87,274 @@ public class RIPPacket {
     }
 
     /**
-     * Return the sender's IP address
+     * Return the sender's identity (the datagram source "ip:port")
      */
     public String getSender() {
-        return "10.0." + sender + ".0";
+        return sender;
+    }
+
+    /**
+     * Return the sender's IP address, used as the next hop of the routes it advertises
+     */
+    public String getSenderAddress() {
+        return Helper.parseNeighborAddress(sender);
+    }
+
+    /**
+     * Return the entry for a given destination or null if there is none
+     * @param address       the destination network
+     * @param subnetMask    the destination subnet mask
+     */
+    public synchronized RoutingTableEntry findEntry(String address, String subnetMask) {
+        return mIndex.get(address + "/" + subnetMask);
+    }
+
+    /**
+     * Add a new destination to the routing table
+     * @param entry the entry to be added
+     */
+    public synchronized void addEntry(RoutingTableEntry entry) {
+        mList.add(entry);
+        mIndex.put(entry.getAddress() + "/" + entry.getSubnetMask(), entry);
+        for(String neighbor: entry.getEqualCostNeighbors()) {
+            indexNeighbor(entry, neighbor);
+        }
+    }
+
+    /**
+     * Make the given neighbor the only next hop of an entry
+     * @param entry     the entry in this table
+     * @param neighbor  the neighbor ("ip:port")
+     */
+    public synchronized void setNextHop(RoutingTableEntry entry, String neighbor) {
+        if(entry.getEqualCostNeighbors().size() == 1 && neighbor.equals(entry.getNeighbor())) {
+            // already the only next hop
+            return;
+        }
+        for(String oldNeighbor: entry.getEqualCostNeighbors()) {
+            unindexNeighbor(entry, oldNeighbor);
+        }
+        entry.setNextHop(Helper.parseNeighborAddress(neighbor));
+        entry.setNeighbor(neighbor);
+        indexNeighbor(entry, neighbor);
+    }
+
+    /**
+     * Add an equal cost next hop to an entry
+     * @param entry     the entry in this table
+     * @param neighbor  the neighbor ("ip:port")
+     */
+    public synchronized void addEqualCostNextHop(RoutingTableEntry entry, String neighbor) {
+        entry.addEqualCostNeighbor(neighbor);
+        indexNeighbor(entry, neighbor);
+    }
+
+    /**
+     * Remove an equal cost next hop from an entry, see {@link RoutingTableEntry#removeEqualCostNeighbor}
+     * @return  true if the neighbor was removed, false if it is the last next hop
+     */
+    public synchronized boolean removeEqualCostNextHop(RoutingTableEntry entry, String neighbor) {
+        if(!entry.removeEqualCostNeighbor(neighbor)) {
+            return false;
+        }
+        unindexNeighbor(entry, neighbor);
+        return true;
+    }
+
+    private void indexNeighbor(RoutingTableEntry entry, String neighbor) {
+        mNeighborIndex.computeIfAbsent(neighbor, n -> new LinkedHashSet<>()).add(entry);
+    }
+
+    private void unindexNeighbor(RoutingTableEntry entry, String neighbor) {
+        Set<RoutingTableEntry> entries = mNeighborIndex.get(neighbor);
+        if(entries != null) {
+            entries.remove(entry);
+            if(entries.isEmpty()) {
+                mNeighborIndex.remove(neighbor);
+            }
+        }
+    }
+
+    /**
+     * Return the entries using the given neighbor as a next hop
+     */
+    public synchronized Set<RoutingTableEntry> getEntriesVia(String neighbor) {
+        return new LinkedHashSet<>(mNeighborIndex.getOrDefault(neighbor, Collections.emptySet()));
+    }
+
+    /**
+     * Return a copy of the routing table as of its last published change. Never blocks,
+     * neither on the table nor on a snapshot being built
+     */
+    public TableSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Hand the whole table, the local networks included, to the next snapshot. Called under
+     * the lock after changes all over the table, followed by {@link #publishSnapshot}
+     */
+    public synchronized void invalidateSnapshot() {
+        List<TableSnapshot.Route> localRoutes = new ArrayList<>();
+        for(RoutingTableEntry local: RoverManager.getInstance().getLocalPrefixes()) {
+            localRoutes.add(TableSnapshot.toRoute(local));
+        }
+        List<TableSnapshot.Route> routes = new ArrayList<>(mList.size());
+        mSuppressedEntries.clear();
+        for(RoutingTableEntry entry: mList) {
+            routes.add(toSnapshotRoute(entry));
+        }
+        mRecordedSize = mList.size();
+        synchronized (mSnapshotLock) {
+            isSnapshotReset = true;
+            mPendingLocalRoutes = localRoutes;
+            mPendingAddedRoutes = routes;
+            mPendingChangedRoutes.clear();
+        }
+    }
+
+    /**
+     * Hand the given entries, and the entries added at the end of the table, to the next
+     * snapshot. Called under the lock, copies only those entries so that the table work
+     * of a change does not grow with the size of the table; {@link #publishSnapshot}
+     * follows once the lock is released
+     * @param changed   the entries changed since the last call
+     */
+    public synchronized void invalidateSnapshot(Collection<RoutingTableEntry> changed) {
+        List<TableSnapshot.Route> added = new ArrayList<>(mList.size() - mRecordedSize);
+        for(int i = mRecordedSize; i < mList.size(); i++) {
+            added.add(toSnapshotRoute(mList.get(i)));
+        }
+        mRecordedSize = mList.size();
+        List<TableSnapshot.Route> routes = new ArrayList<>(changed.size());
+        for(RoutingTableEntry entry: changed) {
+            routes.add(toSnapshotRoute(entry));
+        }
+        synchronized (mSnapshotLock) {
+            mPendingAddedRoutes.addAll(added);
+            mPendingChangedRoutes.addAll(routes);
+        }
+    }
+
+    /**
+     * Return the copy of an entry for the snapshot and keep track of the suppressed ones,
+     * the caller holds the lock
+     */
+    private TableSnapshot.Route toSnapshotRoute(RoutingTableEntry entry) {
+        TableSnapshot.Route route = TableSnapshot.toRoute(entry);
+        if(route.isSuppressed()) {
+            mSuppressedEntries.add(entry);
+        } else if(!mSuppressedEntries.isEmpty()) {
+            mSuppressedEntries.remove(entry);
+        }
+        return route;
+    }
+
+    /**
+     * Publish a new snapshot with the changes handed over since the last one. Called by
+     * the writer once it released the table lock: the copy is made off the lock, so the
+     * queries and the table updates never wait for each other. Writers publishing at the
+     * same time take turns, the first one publishes the changes of all of them
+     */
+    public void publishSnapshot() {
+        synchronized (mSnapshotLock) {
+            if(!isSnapshotReset && mPendingAddedRoutes.isEmpty() && mPendingChangedRoutes.isEmpty()) {
+                return;
+            }
+            mSnapshot = new TableSnapshot(mSnapshot, isSnapshotReset, mPendingLocalRoutes, mPendingAddedRoutes, mPendingChangedRoutes);
+            isSnapshotReset = false;
+            mPendingLocalRoutes = null;
+            mPendingAddedRoutes = new ArrayList<>();
+            mPendingChangedRoutes = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Republish the suppressed routes that are reused by now. A route is reused by the decay
+     * of its penalty alone, without a change that names it, so this runs on a timer
+     * (every periodic broadcast); it looks at the suppressed routes only
+     */
+    public void refreshSuppressedRoutes() {
+        synchronized (this) {
+            if(mSuppressedEntries.isEmpty()) {
+                return;
+            }
+            List<RoutingTableEntry> reused = new ArrayList<>();
+            for(RoutingTableEntry entry: mSuppressedEntries) {
+                if(!FlapDamping.getInstance().isSuppressed(entry)) {
+                    reused.add(entry);
+                }
+            }
+            if(reused.isEmpty()) {
+                return;
+            }
+            invalidateSnapshot(reused);
+        }
+        publishSnapshot();
+    }
+
+    public void setPrintEnabled(boolean isPrintEnabled) {
+        this.isPrintEnabled = isPrintEnabled;
+    }
+
+    public void setTriggeredUpdateEnabled(boolean isTriggeredUpdateEnabled) {
+        this.isTriggeredUpdateEnabled = isTriggeredUpdateEnabled;
+    }
+
+    /**
+     * Register a consumer of the triggered updates, every consumer receives all of them
+     * @return  the id of the consumer, see {@link #awaitTriggeredUpdate}
+     */
+    public synchronized int subscribeTriggeredUpdates() {
+        mTriggeredLists.add(new ArrayList<>());
+        return mTriggeredLists.size() - 1;
+    }
+
+    /**
+     * Wait until either a triggered update is pending for the given consumer or the timeout expires
+     * @param subscriber    the id of the consumer, see {@link #subscribeTriggeredUpdates}
+     * @param timeoutMillis the longest time to wait
+     * @return              the entries to be sent as a triggered update, empty on timeout
+     */
+    public synchronized List<RoutingTableEntry> awaitTriggeredUpdate(int subscriber, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while(mTriggeredLists.get(subscriber).isEmpty() && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        List<RoutingTableEntry> triggered = new ArrayList<>(mTriggeredLists.get(subscriber).size());
+        for(RoutingTableEntry entry: mTriggeredLists.get(subscriber)) {
+            // the route may have come back and been suppressed since it was poisoned
+            triggered.add(toAdvertised(entry));
+        }
+        mTriggeredLists.set(subscriber, new ArrayList<>());
+        return triggered;
+    }
+
+    /**
+     * Hand a poisoned entry to every consumer of the triggered updates. The poison goes out
+     * even when this flap got the route suppressed, so that the neighbors stop using it
+     */
+    private void addTriggeredUpdate(RoutingTableEntry entry) {
+        if(!isTriggeredUpdateEnabled) {
+            return;
+        }
+        for(List<RoutingTableEntry> triggered: mTriggeredLists) {
+            triggered.add(entry);
+        }
+    }
+
+    /**
+     * Wake up the consumers if a triggered update is pending
+     */
+    private void notifyTriggeredUpdate() {
+        for(List<RoutingTableEntry> triggered: mTriggeredLists) {
+            if(!triggered.isEmpty()) {
+                notifyAll();
+                return;
+            }
+        }
     }
 
     @Override
@@ -71,19 +370,155 @@ public class RIPPacket {
     /**
      * Print the routing table
      */
-    public void print() {
+    public synchronized void print() {
+        if(!isPrintEnabled) {
+            return;
+        }
         System.out.println("\nAddress\t\tNextHop\t\tCost");
         System.out.println("===========================================");
-        // print the entry of self
-        // get CIDR addressing from the given subnet mask
-        String CIDRString = Helper.parseSubnetMaskToCIDR(RoverManager.getInstance().getFullRoverId(), RoutingTableEntry.SUBNET_MASK);
-        System.out.println(CIDRString + "\t" + Helper.parseNetworkAsIpAddress(RoverManager.getInstance().getFullRoverId()) + "\t" + "0");
+        // print the locally attached networks
+        for(RoutingTableEntry local: RoverManager.getInstance().getLocalPrefixes()) {
+            // get CIDR addressing from the given subnet mask
+            String CIDRString = Helper.parseSubnetMaskToCIDR(local.getAddress(), local.getSubnetMask());
+            System.out.println(CIDRString + "\t" + local.getNextHop() + "\t" + local.getMetric());
+        }
 
         for(int i = 0; i < mList.size(); i++) {
             // get CIDR addressing from the given subnet mask
-            CIDRString = Helper.parseSubnetMaskToCIDR(mList.get(i).getAddress(), mList.get(i).getSubnetMask());
-            System.out.println(CIDRString + "\t" + Helper.parseNetworkAsIpAddress(mList.get(i).getNextHop()) + "\t" + mList.get(i).getMetric());
+            String CIDRString = Helper.parseSubnetMaskToCIDR(mList.get(i).getAddress(), mList.get(i).getSubnetMask());
+            System.out.println(CIDRString + "\t" + formatNextHops(mList.get(i)) + "\t" + mList.get(i).getMetric());
+        }
+    }
+
+    /**
+     * Return the next hop IP address(es) of an entry, comma separated for equal cost routes
+     */
+    private String formatNextHops(RoutingTableEntry entry) {
+        if(entry.getEqualCostNeighbors().size() < 2) {
+            return entry.getNextHop();
+        }
+        StringBuilder nextHops = new StringBuilder();
+        for(String neighbor: entry.getEqualCostNeighbors()) {
+            if(nextHops.length() > 0) {
+                nextHops.append(",");
+            }
+            nextHops.append(Helper.parseNeighborAddress(neighbor));
+        }
+        return nextHops.toString();
+    }
+
+    /**
+     * Return the forwarding next hop for a destination address. The longest matching
+     * prefix is chosen and, among its equal cost next hops, the one picked by the flow hash
+     * @param destination   the destination IP address
+     * @param flowHash      the hash of the flow, see {@link Helper#flowHash}
+     * @return              the neighbor ("ip:port"), {@link RoutingTableEntry#NEXT_HOP_SELF} for
+     *                      a local network or null if the destination is unreachable
+     */
+    public synchronized String selectNextHop(String destination, int flowHash) {
+        int address = Helper.parseIpAddressToInt(destination);
+        for(RoutingTableEntry local: RoverManager.getInstance().getLocalPrefixes()) {
+            int mask = Helper.parseIpAddressToInt(local.getSubnetMask());
+            if((address & mask) == Helper.parseIpAddressToInt(local.getAddress())) {
+                return RoutingTableEntry.NEXT_HOP_SELF;
+            }
+        }
+        // probe the index from the longest to the shortest prefix
+        for(int prefixLength = 32; prefixLength >= 0; prefixLength--) {
+            int mask = Helper.prefixLengthToMask(prefixLength);
+            RoutingTableEntry entry = mIndex.get(Helper.parseIntToIpAddress(address & mask) + "/" + Helper.parseIntToIpAddress(mask));
+            if(entry != null && entry.getMetric() < METRIC_UNREACHABLE && !FlapDamping.getInstance().isSuppressed(entry)) {
+                return entry.selectNeighbor(flowHash);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the list of entries advertised to the neighbors: the locally attached
+     * networks (metric 0) followed by the routing table, where the routes suppressed for
+     * flapping are advertised as unreachable, summarized where configured and filtered by
+     * the export policy
+     */
+    public synchronized List<RoutingTableEntry> getExportedList() {
+        List<RoutingTableEntry> exportedList = new ArrayList<>(RoverManager.getInstance().getLocalPrefixes());
+        for(RoutingTableEntry entry: mList) {
+            exportedList.add(toAdvertised(entry));
+        }
+        return RoutePolicy.getInstance().getExport().apply(RouteSummarizer.getInstance().summarize(exportedList));
+    }
+
+    /**
+     * Return the entry as it is advertised: a reachable route that is suppressed for flapping
+     * goes out as an unreachable copy, so that the neighbors keep it withdrawn. The caller
+     * holds the lock
+     */
+    private RoutingTableEntry toAdvertised(RoutingTableEntry entry) {
+        if(entry.getMetric() >= METRIC_UNREACHABLE || !FlapDamping.getInstance().isSuppressed(entry)) {
+            return entry;
+        }
+        RouterStatistics.getInstance().getRoutesWithheld().increment();
+        RoutingTableEntry withheld = new RoutingTableEntry(entry.getAddressFamilyIdentifier()
+                , entry.getRouteTag()
+                , entry.getAddress()
+                , entry.getSubnetMask()
+                , entry.getNextHop()
+                , METRIC_UNREACHABLE);
+        withheld.setNeighbors(entry);
+        return withheld;
+    }
+
+    /**
+     * Return true if there is nothing to advertise, in which case a rover
+     * broadcasts a request instead of a response
+     */
+    public synchronized boolean isEmpty() {
+        return mList.isEmpty() && RoverManager.getInstance().getLocalPrefixes().isEmpty();
+    }
+
+    /**
+     * Return the full RIP message as a list of datagram payloads. A request is a
+     * single datagram, a response is split so that no datagram carries more than
+     * {@link #MAX_RTE_PER_PACKET} RTEs
+     */
+    public List<byte[]> toByteArrays(String commandType) {
+        List<byte[]> datagrams = new ArrayList<>();
+        if(!commandType.equalsIgnoreCase(COMMAND_RESPONSE)) {
+            datagrams.add(toByteArray(commandType, new ArrayList<>()));
+            return datagrams;
+        }
+        return toResponseByteArrays(getExportedList());
+    }
+
+    /**
+     * Return a response carrying the given entries, at most {@link #MAX_RTE_PER_PACKET}
+     * RTEs per datagram
+     */
+    public List<byte[]> toResponseByteArrays(List<RoutingTableEntry> entries) {
+        List<byte[]> datagrams = new ArrayList<>();
+        for(int from = 0; from < entries.size(); from += MAX_RTE_PER_PACKET) {
+            int to = Math.min(entries.size(), from + MAX_RTE_PER_PACKET);
+            datagrams.add(toByteArray(COMMAND_RESPONSE, entries.subList(from, to)));
+        }
+        return datagrams;
+    }
+
+    /**
+     * Return the response that withdraws everything this rover advertises: the exported
+     * entries with metric {@link #METRIC_UNREACHABLE}, at most {@link #MAX_RTE_PER_PACKET}
+     * RTEs per datagram. The routing table itself is left as it is
+     */
+    public List<byte[]> toWithdrawalByteArrays() {
+        List<RoutingTableEntry> withdrawnList = new ArrayList<>();
+        for(RoutingTableEntry entry: getExportedList()) {
+            withdrawnList.add(new RoutingTableEntry(entry.getAddressFamilyIdentifier()
+                    , entry.getRouteTag()
+                    , entry.getAddress()
+                    , entry.getSubnetMask()
+                    , entry.getNextHop()
+                    , METRIC_UNREACHABLE));
         }
+        return toResponseByteArrays(withdrawnList);
     }
 
     /**
@@ -93,7 +528,16 @@ public class RIPPacket {
      * @return
      */
     public byte[] toByteArray(String commandType) {
-        byte[] arr = new byte[4 + (mList.size()*20)];
+        return toByteArray(commandType, getExportedList());
+    }
+
+    /**
+     * Return the byte array equivalent of a RIP packet carrying the given entries
+     * @param commandType   request or response
+     * @param exportedList  the RTEs to be encoded, ignored for requests
+     */
+    public byte[] toByteArray(String commandType, List<RoutingTableEntry> exportedList) {
+        byte[] arr = new byte[4 + (exportedList.size()*20)];
         // loop over each header
         int i = 0;
         // add HEADER: command
@@ -103,87 +547,134 @@ public class RIPPacket {
             arr[i++] = (byte)Integer.parseInt(COMMAND_RESPONSE);
         // add HEADER: version
         arr[i++] = (byte)Integer.parseInt(version);
-        // add HEADER: mustBeZero
-        byte roverId = Byte.valueOf(RoverManager.getInstance().getRoverId());
-        arr[i++] = roverId;
+        // add HEADER: mustBeZero (2 bytes), the sender is identified by the datagram source
+        arr[i++] = (byte)Integer.parseInt(mustBeZero);
         arr[i++] = (byte)Integer.parseInt(mustBeZero);
 
         // proceed only if the command type is response
         if(commandType.equalsIgnoreCase(COMMAND_RESPONSE))  {
-            // add Routing Table Entries
-            for(int j = 0; j < mList.size(); j++)   {
-                RoutingTableEntry currentRTE = mList.get(j);
-
-                // add address family identifier
-                int addressFamily = currentRTE.getAddressFamilyIdentifier();
-                byte[] byteEquivalent = new byte[2];
-                byteEquivalent[0] = (byte) (addressFamily >> 8);
-                byteEquivalent[1] = (byte) (addressFamily);
-                for (byte b : byteEquivalent) {
-                    arr[i++] = b;
-                }
+            // add Routing Table Entries, every field written in place
+            for(int j = 0; j < exportedList.size(); j++)   {
+                RoutingTableEntry currentRTE = exportedList.get(j);
+                // add address family identifier and route tag
+                i = putShort(arr, i, currentRTE.getAddressFamilyIdentifier());
+                i = putShort(arr, i, currentRTE.getRouteTag());
+                // add IPv4 address, subnet mask and next hop IP
+                i = putInt(arr, i, Helper.parseIpAddressToInt(currentRTE.getAddress()));
+                i = putInt(arr, i, Helper.parseIpAddressToInt(currentRTE.getSubnetMask()));
+                i = putInt(arr, i, Helper.parseIpAddressToInt(currentRTE.getNextHop()));
+                // add metric
+                i = putInt(arr, i, currentRTE.getMetric());
+            }
+        }
+        // return the byte array
+        return arr;
+    }
 
-                // add route tag
-                int routeTag = currentRTE.getRouteTag();
-                byteEquivalent = new byte[2];
-                byteEquivalent[0] = (byte) (routeTag >> 8);
-                byteEquivalent[1] = (byte) (routeTag);
-                for (byte b : byteEquivalent) {
-                    arr[i++] = b;
-                }
+    /**
+     * Write the low 16 bits of a value, most significant byte first
+     * @return  the index after the written bytes
+     */
+    private static int putShort(byte[] arr, int i, int value) {
+        arr[i++] = (byte) (value >> 8);
+        arr[i++] = (byte) (value);
+        return i;
+    }
 
-                // add IPv4 address
-                String IpAddress = currentRTE.getAddress();
-                // split the ip address by '.' and append 4 bytes to the byte array
-                String[] s = IpAddress.split("\\.");
-                for(int x = 0; x < 4; x++)  {
-                    arr[i++] = Helper.BitwiseManager.convertIntegerToByte(s[x]);
-                }
+    /**
+     * Write a 32 bit value, most significant byte first
+     * @return  the index after the written bytes
+     */
+    private static int putInt(byte[] arr, int i, int value) {
+        arr[i++] = (byte) (value >> 24);
+        arr[i++] = (byte) (value >> 16);
+        arr[i++] = (byte) (value >> 8);
+        arr[i++] = (byte) (value);
+        return i;
+    }
 
-                // add subnet mask
-                String subnetMask = currentRTE.getSubnetMask();
-                // split the ip address by '.' and append 4 bytes to the byte array
-                s = subnetMask.split("\\.");
-                for(int x = 0; x < 4; x++)  {
-                    arr[i++] = Helper.BitwiseManager.convertIntegerToByte(s[x]);
+    /**
+     * Mark a given neighboring rover as dead. Routes with another equal cost next hop
+     * fail over to it at once, every other route learned through it becomes
+     * unreachable (metric: 16). Only the routes using the neighbor are visited, and
+     * the poisoned ones are handed to the broadcasting process as a triggered update
+     * @param neighbor  the neighboring rover ("ip:port") to be marked as dead
+     */
+    public void markAsDead(String neighbor) {
+        synchronized (this) {
+//            System.out.println("markAsDead: " + neighbor + " marked as DEAD");
+            PacketCapture.getInstance().captureNeighborDown(neighbor);
+            Set<RoutingTableEntry> entries = mNeighborIndex.get(neighbor);
+            if(entries == null) {
+                return;
+            }
+            // mark the ones learned only from this neighbor as having metric 16,
+            // they keep it as their next hop until a better route shows up
+            List<RoutingTableEntry> changed = new ArrayList<>(entries);
+            for(RoutingTableEntry entry: changed)  {
+                if(removeEqualCostNextHop(entry, neighbor)) {
+                    logFailover(entry, neighbor);
+                } else if(entry.getMetric() < METRIC_UNREACHABLE) {
+                    entry.setMetric(METRIC_UNREACHABLE);
+                    addTriggeredUpdate(entry);
                 }
+            }
+            invalidateSnapshot(changed);
+            notifyTriggeredUpdate();
+        }
+        publishSnapshot();
+    }
 
-                // add next hop IP
-                String nextHop = currentRTE.getNextHop();
-                // split the ip address by '.' and append 4 bytes to the byte array
-                s = nextHop.split("\\.");
-                for(int x = 0; x < 4; x++)  {
-                    arr[i++] = Helper.BitwiseManager.convertIntegerToByte(s[x]);
+    /**
+     * Withdraw the learned routes a new import policy denies, as if their neighbors had
+     * withdrawn them: equal cost next hops the policy denies are dropped, the routes left
+     * without a next hop become unreachable and go out as a triggered update. Metric
+     * offsets and tags of a new policy take effect with the next update of each neighbor
+     * @param importPolicy  the import policy now in place
+     */
+    public void applyImportPolicy(RoutePolicy.Direction importPolicy) {
+        if(importPolicy.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            List<RoutingTableEntry> changed = new ArrayList<>();
+            for(RoutingTableEntry entry: mList) {
+                if(entry.getMetric() >= METRIC_UNREACHABLE) {
+                    continue;
                 }
-
-                // add metric
-                int metric = currentRTE.getMetric();
-                byteEquivalent = new byte[4];
-                byteEquivalent[0] = (byte) (metric >> 24);
-                byteEquivalent[1] = (byte) (metric >> 16);
-                byteEquivalent[2] = (byte) (metric >> 8);
-                byteEquivalent[3] = (byte) (metric);
-                for (byte b : byteEquivalent) {
-                    arr[i++] = b;
+                int network = Helper.parseIpAddressToInt(entry.getAddress());
+                int prefixLength = Helper.maskToPrefixLength(Helper.parseIpAddressToInt(entry.getSubnetMask()));
+                for(String neighbor: entry.getEqualCostNeighbors()) {
+                    if(!importPolicy.isDeny(importPolicy.match(neighbor, network, prefixLength))) {
+                        continue;
+                    }
+                    changed.add(entry);
+                    if(removeEqualCostNextHop(entry, neighbor)) {
+                        logFailover(entry, neighbor);
+                    } else {
+                        entry.setMetric(METRIC_UNREACHABLE);
+                        addTriggeredUpdate(entry);
+                        break;
+                    }
                 }
             }
+            if(!changed.isEmpty()) {
+                invalidateSnapshot(changed);
+            }
+            notifyTriggeredUpdate();
         }
-        // return the byte array
-        return arr;
+        publishSnapshot();
     }
 
     /**
-     * Mark a given neighboring network as dead (metric: unreachable)
-     * @param neighbor  the neighboring rover to be marked as dead
+     * Report that a route lost one of its equal cost next hops
+     * @param entry     the route
+     * @param neighbor  the lost next hop ("ip:port")
      */
-    public void markAsDead(String neighbor) {
-//        System.out.println("markAsDead: " + neighbor + " marked as DEAD");
-        // go over all entries and mark the corresponding one as having metric 16
-        for(RoutingTableEntry entry: mList)  {
-            if(entry.getAddress().equalsIgnoreCase(neighbor))   {
-                entry.setMetric(METRIC_UNREACHABLE);
-            }
-        }
+    public void logFailover(RoutingTableEntry entry, String neighbor) {
+        Log.router(RoverManager.getInstance().getFullRoverId() + ": "
+                + Helper.parseSubnetMaskToCIDR(entry.getAddress(), entry.getSubnetMask())
+                + " lost next hop " + neighbor + ", now via " + entry.getEqualCostNeighbors());
     }
 
     /***
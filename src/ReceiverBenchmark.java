@@ -0,0 +1,120 @@
+/**
+ * {@link ReceiverBenchmark}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Benchmark of ingress packets per second against the number of receiving sockets
+ * (-Drip.receivers). For every receiver count it binds that many SO_REUSEPORT sockets
+ * on a fresh port, each with its own {@link ReceivingProcess}, runs the ingress workers
+ * behind them and lets one unpaced sender per core blast small RIP responses from many
+ * source ports at 127.0.0.1. The kernel spreads unicast datagrams over the sockets by
+ * their source, multicast datagrams always land on the single socket that joined the group.
+ *
+ * EXECUTING:
+ *      java ReceiverBenchmark [seconds per step] [max receivers] [first port]
+ */
+public class ReceiverBenchmark {
+    private static final int SOURCE_PORTS_PER_SENDER = 64;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int maxReceivers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 5600;
+        int senders = Runtime.getRuntime().availableProcessors();
+        PrintStream out = System.out;
+        out.println("cores " + Runtime.getRuntime().availableProcessors() + ", senders " + senders + ", " + seconds + " s per step");
+        // the rover prints its table on every change, keep the report readable
+        BenchSupport.silenceStdout();
+
+        // one datagram carrying a single RTE, in the regular wire format
+        List<RoutingTableEntry> table = Collections.singletonList(BenchSupport.route(BenchSupport.network(0), 24, null, 1));
+        byte[] payload = new RIPPacket().toByteArray(RIPPacket.COMMAND_RESPONSE, table);
+
+        RIPPacket mRIPPacket = RoverManager.getInstance().getmRIPPacket();
+        for(int i = 0; i < MyThreadPoolExecutorService.INGRESS_WORKERS; i++) {
+            Thread worker = new IngressProcess("ingress-" + i, null, mRIPPacket);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        RouterStatistics statistics = RouterStatistics.getInstance();
+        for(int receivers = 1; receivers <= maxReceivers; receivers *= 2, port++) {
+            List<DatagramSocket> sockets = new ArrayList<>();
+            for(int i = 0; i < receivers; i++) {
+                DatagramSocket socket = MainRouterProcess.openReceiverSocket(port);
+                socket.setReceiveBufferSize(4 * 1024 * 1024);
+                sockets.add(socket);
+                new ReceivingProcess("receiver-" + i, socket).start();
+            }
+
+            AtomicBoolean isRunning = new AtomicBoolean(true);
+            List<Thread> senderThreads = new ArrayList<>();
+            long[] sent = new long[senders];
+            InetAddress target = InetAddress.getLoopbackAddress();
+            for(int s = 0; s < senders; s++) {
+                final int sender = s;
+                final int destinationPort = port;
+                Thread thread = new Thread(() -> {
+                    try {
+                        DatagramSocket[] sources = new DatagramSocket[SOURCE_PORTS_PER_SENDER];
+                        for(int i = 0; i < sources.length; i++) {
+                            sources[i] = new DatagramSocket();
+                        }
+                        DatagramPacket packet = new DatagramPacket(payload, payload.length, target, destinationPort);
+                        for(long n = 0; isRunning.get(); n++) {
+                            sources[(int)(n % sources.length)].send(packet);
+                            sent[sender]++;
+                        }
+                        for(DatagramSocket source: sources) {
+                            source.close();
+                        }
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    }
+                });
+                thread.start();
+                senderThreads.add(thread);
+            }
+
+            // skip the first second to let the sockets and the JIT warm up
+            Thread.sleep(1000);
+            long receivedBefore = statistics.getPacketsReceived().sum();
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            long received = statistics.getPacketsReceived().sum() - receivedBefore;
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            isRunning.set(false);
+            for(Thread thread: senderThreads) {
+                thread.join();
+            }
+            for(DatagramSocket socket: sockets) {
+                socket.close();
+            }
+            long totalSent = 0;
+            for(long count: sent) {
+                totalSent += count;
+            }
+            out.printf("receivers %3d | ingress %10.0f pkt/s | offered (whole step) %10d pkt%n", receivers, received / elapsed, totalSent);
+        }
+        out.flush();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * {@link ReceivingProcess}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+
+/**
+ * A receiving loop. It takes datagrams off one socket and hands them to the
+ * {@link IngressQueue} without looking into them, so that a receiving thread
+ * spends as little time per packet as possible
+ */
+public class ReceivingProcess extends ServiceProcess {
+    private DatagramSocket socket;
+    // the interface the socket belongs to, null outside of a rover
+    private RouterInterface routerInterface;
+
+    public ReceivingProcess(String name, DatagramSocket socket) {
+        this(name, socket, null);
+    }
+
+    public ReceivingProcess(String name, DatagramSocket socket, RouterInterface routerInterface) {
+        super(name, 0);
+        this.socket = socket;
+        this.routerInterface = routerInterface;
+    }
+
+    @Override
+    protected void serve()   {
+        byte[] buffer = null;
+        DatagramPacket incomingPacket = null;
+        while(isRunning() && !socket.isClosed()) {
+            try{
+                if(buffer == null) {
+                    buffer = new byte[504];
+                    incomingPacket = new DatagramPacket(buffer, buffer.length);
+                } else {
+                    incomingPacket.setLength(buffer.length);
+                }
+                // read the incoming data into the packet
+                socket.receive(incomingPacket);
+                RouterStatistics.getInstance().getPacketsReceived().increment();
+                if(PacketCapture.getInstance().isEnabled()) {
+                    // whatever happens to it next, the datagram is on record
+                    PacketCapture.getInstance().capture(PacketCapture.KIND_RECEIVED, getInterfaceId(),
+                            incomingPacket.getAddress(), incomingPacket.getPort(),
+                            buffer, 0, incomingPacket.getLength(), 0, 1);
+                }
+                if(routerInterface != null) {
+                    routerInterface.onReceive(incomingPacket.getAddress(), incomingPacket.getPort());
+                }
+//                System.out.println("Packet from : " + incomingPacket.getAddress().toString() + ", SocketAddress: " + incomingPacket.getSocketAddress() + ", Port: " + incomingPacket.getPort());
+                if(NeighborLiveness.isHello(buffer, incomingPacket.getLength())) {
+                    // a hello never waits behind the updates and never touches the table,
+                    // the buffer is used again for the next datagram
+                    NeighborLiveness.getInstance().onHello(incomingPacket.getAddress(), incomingPacket.getPort(), buffer);
+                    continue;
+                }
+                // hand the packet to the workers through the bounded ingress queue
+                RoverManager.getInstance().getIngressQueue().offer(incomingPacket);
+                buffer = null;
+            }catch(IOException ex){
+                if(!socket.isClosed()) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the index of the interface of the socket, 0 outside of a rover
+     */
+    private int getInterfaceId() {
+        return routerInterface == null ? 0 : Math.max(0, RoverManager.getInstance().getInterfaces().indexOf(routerInterface));
+    }
+
+    /**
+     * Closing the socket is the only way to end a blocking receive
+     */
+    @Override
+    protected void onStop() {
+        socket.close();
+    }
+
+    /**
+     * A closed socket cannot be opened again
+     */
+    @Override
+    public boolean isRestartable() {
+        return !socket.isClosed();
+    }
+}
@@ -0,0 +1,442 @@
+/**
+ * {@link RoutePolicy}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Import and export route policy. The policy file holds one rule per line, '#' starts a comment -
+ *      <import|export> <permit|deny> <prefix|any> [ge <n>] [le <n>] [neighbor <ip[:port]>] [offset <n>] [tag <n>]
+ * 1.   a rule matches a route whose network falls inside the prefix and whose prefix length is
+ *      in [ge, le]. Without ge/le only the prefix itself matches, with le alone ge is the prefix
+ *      length, with ge alone le is 32. 'any' is 0.0.0.0/0 le 32
+ * 2.   neighbor restricts the rule to the routes received from (import) or learned from
+ *      (export) that neighbor, an address without a port matches every port
+ * 3.   the first matching rule decides. deny drops the route, permit accepts it after adding
+ *      the offset to its metric (at most 16, a poisoned route stays poisoned) and setting its tag.
+ *      A route no rule matches is accepted unchanged
+ *
+ * Import rules are applied to every RTE as it is decoded, before it reaches the routing table.
+ * Export rules are applied to everything sent: periodic, triggered and the final withdrawal.
+ * The rules of each direction are compiled into {@link PrefixTrie}s (one for the rules without
+ * a neighbor and one per neighbor named in the rules), so that a route costs one trie walk.
+ *
+ * The compiled policy is immutable and published through a volatile reference. The file is
+ * checked for changes every second and recompiled aside, a broken file keeps the previous
+ * policy. Once a new policy is in place the routes it no longer imports are poisoned.
+ *
+ * Configured with -Drip.policy=<file>
+ */
+public class RoutePolicy {
+    private static final RoutePolicy routePolicy = new RoutePolicy(RouterConfig.getPolicyFile());
+
+    private final String path;
+    private volatile Policy policy = Policy.PERMIT_ALL;
+    private long lastModified = -1;
+
+    public static RoutePolicy getInstance() {
+        return routePolicy;
+    }
+
+    private RoutePolicy(String path) {
+        this.path = path;
+        load();
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    public Direction getImport() {
+        return policy.importDirection;
+    }
+
+    public Direction getExport() {
+        return policy.exportDirection;
+    }
+
+    /**
+     * Install a policy, e.g. one compiled by {@link #compile}
+     */
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Compile and install the policy file if it changed since the last call, then poison
+     * the routes the new policy does not import
+     * @return  true if a new policy is in place
+     */
+    public synchronized boolean reloadIfChanged() {
+        if(!load()) {
+            return false;
+        }
+        RoverManager.getInstance().getmRIPPacket().applyImportPolicy(policy.importDirection);
+        return true;
+    }
+
+    /**
+     * Compile and install the policy file if it changed since the last call
+     * @return  true if a new policy is in place
+     */
+    private synchronized boolean load() {
+        if(path == null) {
+            return false;
+        }
+        File file = new File(path);
+        long modified = file.lastModified();
+        if(modified == lastModified) {
+            return false;
+        }
+        lastModified = modified;
+        Policy compiled;
+        try {
+            compiled = compile(Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII));
+        } catch (IOException | IllegalArgumentException ex) {
+            Log.router(RoverManager.getInstance().getFullRoverId() + ": keeping the current route policy, cannot load '" + path + "': " + ex.getMessage());
+            return false;
+        }
+        this.policy = compiled;
+        Log.router(RoverManager.getInstance().getFullRoverId() + ": route policy of " + compiled.importDirection.getRules().size() + " import and "
+                + compiled.exportDirection.getRules().size() + " export rules from " + path);
+        return true;
+    }
+
+    /**
+     * Parse and compile the lines of a policy file
+     * @throws IllegalArgumentException naming the first line that is not a valid rule
+     */
+    public static Policy compile(List<String> lines) {
+        List<Rule> importRules = new ArrayList<>();
+        List<Rule> exportRules = new ArrayList<>();
+        for(int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if(comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            if(line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                String[] words = line.trim().split("\\s+");
+                if(words[0].equalsIgnoreCase("import")) {
+                    importRules.add(Rule.parse(words));
+                } else if(words[0].equalsIgnoreCase("export")) {
+                    exportRules.add(Rule.parse(words));
+                } else {
+                    throw new IllegalArgumentException("expected import or export");
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": " + ex.getMessage());
+            }
+        }
+        return new Policy(new Direction(importRules), new Direction(exportRules));
+    }
+
+    /**
+     * The compiled import and export rules
+     */
+    public static class Policy {
+        public static final Policy PERMIT_ALL = new Policy(new Direction(Collections.emptyList()), new Direction(Collections.emptyList()));
+
+        private final Direction importDirection;
+        private final Direction exportDirection;
+
+        private Policy(Direction importDirection, Direction exportDirection) {
+            this.importDirection = importDirection;
+            this.exportDirection = exportDirection;
+        }
+
+        public Direction getImport() {
+            return importDirection;
+        }
+
+        public Direction getExport() {
+            return exportDirection;
+        }
+    }
+
+    /**
+     * The compiled rules of one direction. A caller picks the trie of the neighbor once
+     * ({@link #select}) and matches every route of that neighbor against it
+     */
+    public static class Direction {
+        private final List<Rule> rules;
+        private final boolean[] isDeny;
+        private final int[] offset;
+        private final int[] tag;
+        // the rules without a neighbor
+        private final PrefixTrie anyNeighbor;
+        // "ip:port" and "ip" named in the rules -> their rules and the rules without a neighbor
+        private final Map<String, PrefixTrie> byNeighbor = new HashMap<>();
+        private final Map<String, PrefixTrie> byAddress = new HashMap<>();
+
+        private Direction(List<Rule> rules) {
+            this.rules = rules;
+            this.isDeny = new boolean[rules.size()];
+            this.offset = new int[rules.size()];
+            this.tag = new int[rules.size()];
+            for(int i = 0; i < rules.size(); i++) {
+                isDeny[i] = rules.get(i).isDeny;
+                offset[i] = rules.get(i).offset;
+                tag[i] = rules.get(i).tag;
+            }
+            this.anyNeighbor = PrefixTrie.compile(rules, indexes(null));
+            for(Rule rule: rules) {
+                if(rule.neighbor == null || byNeighbor.containsKey(rule.neighbor) || byAddress.containsKey(rule.neighbor)) {
+                    continue;
+                }
+                if(rule.neighbor.indexOf(':') >= 0) {
+                    byNeighbor.put(rule.neighbor, PrefixTrie.compile(rules, indexes(rule.neighbor)));
+                } else {
+                    byAddress.put(rule.neighbor, PrefixTrie.compile(rules, indexes(rule.neighbor + ":0")));
+                }
+            }
+        }
+
+        /**
+         * Return the positions of the rules that apply to the given neighbor, null for the
+         * rules without a neighbor. Port 0 stands for "the address only"
+         */
+        private List<Integer> indexes(String neighbor) {
+            List<Integer> indexes = new ArrayList<>();
+            for(int i = 0; i < rules.size(); i++) {
+                Rule rule = rules.get(i);
+                if(rule.neighbor == null || (neighbor != null && (rule.neighbor.equals(neighbor)
+                        || rule.neighbor.equals(Helper.parseNeighborAddress(neighbor))))) {
+                    indexes.add(i);
+                }
+            }
+            return indexes;
+        }
+
+        public boolean isEmpty() {
+            return rules.isEmpty();
+        }
+
+        public List<Rule> getRules() {
+            return rules;
+        }
+
+        /**
+         * Return the trie holding the rules for routes of the given neighbor
+         * @param neighbor  the neighbor ("ip:port"), null for local routes
+         */
+        public PrefixTrie select(String neighbor) {
+            if(neighbor == null || (byNeighbor.isEmpty() && byAddress.isEmpty())) {
+                return anyNeighbor;
+            }
+            PrefixTrie trie = byNeighbor.get(neighbor);
+            if(trie == null && !byAddress.isEmpty()) {
+                trie = byAddress.get(Helper.parseNeighborAddress(neighbor));
+            }
+            return trie == null ? anyNeighbor : trie;
+        }
+
+        /**
+         * Return the index of the first rule matching the route, -1 if none does
+         */
+        public int match(String neighbor, int network, int prefixLength) {
+            return select(neighbor).match(network, prefixLength);
+        }
+
+        public boolean isDeny(int rule) {
+            return rule >= 0 && isDeny[rule];
+        }
+
+        /**
+         * Return the metric after the offset of the rule, a poisoned route stays poisoned
+         */
+        public int applyOffset(int rule, int metric) {
+            if(rule < 0 || offset[rule] == 0 || metric >= RIPPacket.METRIC_UNREACHABLE) {
+                return metric;
+            }
+            return Math.max(0, Math.min(RIPPacket.METRIC_UNREACHABLE, metric + offset[rule]));
+        }
+
+        /**
+         * Return the route tag after the rule
+         */
+        public int applyTag(int rule, int routeTag) {
+            return rule < 0 || tag[rule] < 0 ? routeTag : tag[rule];
+        }
+
+        /**
+         * Return the routes to be sent in place of the given ones: denied routes are left
+         * out, changed routes are copies. The input list and its entries are never modified
+         */
+        public List<RoutingTableEntry> apply(List<RoutingTableEntry> routes) {
+            if(rules.isEmpty()) {
+                return routes;
+            }
+            List<RoutingTableEntry> exported = new ArrayList<>(routes.size());
+            for(RoutingTableEntry entry: routes) {
+                int rule = match(entry.getNeighbor()
+                        , Helper.parseIpAddressToInt(entry.getAddress())
+                        , Helper.maskToPrefixLength(Helper.parseIpAddressToInt(entry.getSubnetMask())));
+                if(rule < 0) {
+                    exported.add(entry);
+                } else if(isDeny[rule]) {
+                    RouterStatistics.getInstance().getRoutesFilteredOut().increment();
+                } else if(applyOffset(rule, entry.getMetric()) == entry.getMetric()
+                        && applyTag(rule, entry.getRouteTag()) == entry.getRouteTag()) {
+                    exported.add(entry);
+                } else {
+                    RoutingTableEntry changed = new RoutingTableEntry(entry.getAddressFamilyIdentifier()
+                            , applyTag(rule, entry.getRouteTag())
+                            , entry.getAddress()
+                            , entry.getSubnetMask()
+                            , entry.getNextHop()
+                            , applyOffset(rule, entry.getMetric()));
+                    // split horizon still needs to know where the route was learned
+                    changed.setNeighbors(entry);
+                    exported.add(changed);
+                }
+            }
+            return exported;
+        }
+    }
+
+    /**
+     * One rule as written in the policy file
+     */
+    public static class Rule {
+        private final boolean isDeny;
+        private final int network;
+        private final int length;
+        private final int ge;
+        private final int le;
+        private final String neighbor;
+        private final int offset;
+        private final int tag;
+
+        private Rule(boolean isDeny, int network, int length, int ge, int le, String neighbor, int offset, int tag) {
+            this.isDeny = isDeny;
+            this.network = network;
+            this.length = length;
+            this.ge = ge;
+            this.le = le;
+            this.neighbor = neighbor;
+            this.offset = offset;
+            this.tag = tag;
+        }
+
+        /**
+         * Parse the words of a rule, the first one being the direction
+         */
+        private static Rule parse(String[] words) {
+            boolean isDeny;
+            if(words[1].equalsIgnoreCase("deny")) {
+                isDeny = true;
+            } else if(words[1].equalsIgnoreCase("permit")) {
+                isDeny = false;
+            } else {
+                throw new IllegalArgumentException("expected permit or deny, found '" + words[1] + "'");
+            }
+            boolean isAny = words[2].equalsIgnoreCase("any");
+            int[] cidr = isAny ? new int[] {0, 0} : Helper.parseCIDR(words[2]);
+            if(cidr[1] < 0 || cidr[1] > 32) {
+                throw new IllegalArgumentException("invalid prefix '" + words[2] + "'");
+            }
+            int ge = -1;
+            int le = -1;
+            String neighbor = null;
+            int offset = 0;
+            int tag = -1;
+            for(int i = 3; i < words.length; i += 2) {
+                String value = words[i + 1];
+                switch (words[i].toLowerCase()) {
+                    case "ge":
+                        ge = Integer.parseInt(value);
+                        break;
+                    case "le":
+                        le = Integer.parseInt(value);
+                        break;
+                    case "neighbor":
+                        neighbor = value;
+                        break;
+                    case "offset":
+                        offset = Integer.parseInt(value.startsWith("+") ? value.substring(1) : value);
+                        break;
+                    case "tag":
+                        tag = Integer.parseInt(value);
+                        if(tag < 0 || tag > 0xFFFF) {
+                            throw new IllegalArgumentException("tag out of range: " + value);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown keyword '" + words[i] + "'");
+                }
+            }
+            if(ge < 0 && le < 0) {
+                // a prefix alone is an exact match, 'any' matches everything
+                le = isAny ? 32 : cidr[1];
+            } else if(le < 0) {
+                le = 32;
+            }
+            if(ge < 0) {
+                ge = cidr[1];
+            }
+            if(ge < cidr[1] || le < ge || le > 32) {
+                throw new IllegalArgumentException("expected " + cidr[1] + " <= ge <= le <= 32");
+            }
+            if(isDeny && (offset != 0 || tag >= 0)) {
+                throw new IllegalArgumentException("a deny rule has no offset or tag");
+            }
+            return new Rule(isDeny, cidr[0], cidr[1], ge, le, neighbor, offset, tag);
+        }
+
+        /**
+         * Return true if the rule matches the route, evaluated directly (see {@link PrefixTrie})
+         */
+        public boolean matches(String neighbor, int network, int prefixLength) {
+            if(prefixLength < ge || prefixLength > le || (network & Helper.prefixLengthToMask(length)) != this.network) {
+                return false;
+            }
+            return this.neighbor == null || (neighbor != null && (this.neighbor.equals(neighbor)
+                    || this.neighbor.equals(Helper.parseNeighborAddress(neighbor))));
+        }
+
+        public boolean isDeny() {
+            return isDeny;
+        }
+
+        public int getNetwork() {
+            return network;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getGe() {
+            return ge;
+        }
+
+        public int getLe() {
+            return le;
+        }
+
+        public String getNeighbor() {
+            return neighbor;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/**
+ * {@link RouteSummarizer}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The export side summarization stage. Before the routing table is put on the wire
+ * every reachable route that falls inside a configured summary range is grouped by
+ * its next hop and the group is merged into the shortest set of supernets that
+ * covers exactly the same addresses -
+ * 1.   10.0.2.0/24 + 10.0.3.0/24 via the same next hop become 10.0.2.0/23
+ * 2.   a merged supernet is never shorter than its summary range
+ * 3.   the summary carries the lowest metric of its components, and their route tag when
+ *      they all share it. Every neighbor a component was learned from is a next hop of the
+ *      summary, so that split horizon ({@link RouterInterface#filter}) still applies to it
+ * 4.   the component routes are suppressed for as long as the summary is advertised.
+ *      Unreachable components are not merged, so they are still advertised (poisoned) as is
+ * 5.   a summary that is no longer advertised is withdrawn: it goes out with metric 16 for
+ *      one broadcasting interval, so that every interface sends the withdrawal once
+ *
+ * The result is kept until the routes to be summarized change, the periodic updates of
+ * an unchanged table only compare the routes with the ones summarized last time.
+ *
+ * Summary ranges are configured with -Drip.summary=10.0.0.0/16,172.16.0.0/12
+ */
+public class RouteSummarizer {
+    // a withdrawn summary is advertised for one broadcasting interval
+    private static final long WITHDRAWAL_IN_MILLIS = 5000;
+    // a group value packs the route tag of the components above the metric,
+    // MIXED_TAGS when the components do not share one
+    private static final int MIXED_TAGS = 0x10000;
+    private static RouteSummarizer routeSummarizer = null;
+    // each range is held as {network, prefixLength}
+    private List<int[]> summaryRanges = new ArrayList<>();
+    // copies of the routes summarized last time and the summaries made of them
+    private List<RoutingTableEntry> lastRoutes = new ArrayList<>();
+    private List<RoutingTableEntry> lastExported = new ArrayList<>();
+    private Map<String, RoutingTableEntry> lastSummaries = new HashMap<>();
+    // "address/mask" of a withdrawn summary -> its poisoned entry, and the time (ms) it was withdrawn at
+    private Map<String, RoutingTableEntry> withdrawn = new LinkedHashMap<>();
+    private Map<String, Long> withdrawnAt = new HashMap<>();
+    // the last result: the summarized routes followed by the pending withdrawals
+    private List<RoutingTableEntry> result = new ArrayList<>();
+
+    public static RouteSummarizer getInstance() {
+        if(routeSummarizer == null) {
+            routeSummarizer = new RouteSummarizer(RouterConfig.getSummaryRanges());
+        }
+        return routeSummarizer;
+    }
+
+    public RouteSummarizer(List<String> ranges) {
+        for(String range: ranges) {
+            try {
+                summaryRanges.add(Helper.parseCIDR(range));
+            } catch (IllegalArgumentException ex) {
+                Log.router("RouteSummarizer: ignoring invalid summary range '" + range + "'");
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return !summaryRanges.isEmpty();
+    }
+
+    /**
+     * Return the list of routes to be advertised in place of the given routing table.
+     * The input list is never modified, the returned one must not be modified either
+     * @param routes    the routing table
+     * @return          the summarized routing table
+     */
+    public synchronized List<RoutingTableEntry> summarize(List<RoutingTableEntry> routes) {
+        if(!isEnabled()) {
+            return routes;
+        }
+        long now = System.currentTimeMillis();
+        boolean isExpired = false;
+        for(Iterator<Map.Entry<String, Long>> i = withdrawnAt.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<String, Long> withdrawal = i.next();
+            if(now - withdrawal.getValue() >= WITHDRAWAL_IN_MILLIS) {
+                withdrawn.remove(withdrawal.getKey());
+                i.remove();
+                isExpired = true;
+            }
+        }
+        if(isSame(routes, lastRoutes)) {
+            if(isExpired) {
+                result = withWithdrawals(lastExported);
+            }
+            return result;
+        }
+        lastRoutes = new ArrayList<>(routes.size());
+        for(RoutingTableEntry entry: routes) {
+            lastRoutes.add(copy(entry, entry.getMetric()));
+        }
+        Map<String, RoutingTableEntry> summaries = new HashMap<>();
+        lastExported = summarize(routes, summaries);
+
+        // withdraw the summaries that are gone, unless they are still advertised as routes
+        Set<String> advertised = new HashSet<>();
+        for(RoutingTableEntry entry: lastExported) {
+            advertised.add(entry.getAddress() + "/" + entry.getSubnetMask());
+        }
+        for(String key: advertised) {
+            if(withdrawn.remove(key) != null) {
+                withdrawnAt.remove(key);
+            }
+        }
+        for(Map.Entry<String, RoutingTableEntry> summary: lastSummaries.entrySet()) {
+            if(!advertised.contains(summary.getKey())) {
+                withdrawn.put(summary.getKey(), copy(summary.getValue(), RIPPacket.METRIC_UNREACHABLE));
+                withdrawnAt.put(summary.getKey(), now);
+            }
+        }
+        lastSummaries = summaries;
+        result = withWithdrawals(lastExported);
+        return result;
+    }
+
+    /**
+     * Return the summarized routes followed by the pending withdrawals
+     */
+    private List<RoutingTableEntry> withWithdrawals(List<RoutingTableEntry> exported) {
+        if(withdrawn.isEmpty()) {
+            return exported;
+        }
+        List<RoutingTableEntry> withWithdrawals = new ArrayList<>(exported);
+        withWithdrawals.addAll(withdrawn.values());
+        return withWithdrawals;
+    }
+
+    /**
+     * Return true if the routes are the ones summarized last time
+     */
+    private static boolean isSame(List<RoutingTableEntry> routes, List<RoutingTableEntry> last) {
+        if(routes.size() != last.size()) {
+            return false;
+        }
+        for(int i = 0; i < routes.size(); i++) {
+            RoutingTableEntry entry = routes.get(i);
+            RoutingTableEntry copy = last.get(i);
+            if(entry.getMetric() != copy.getMetric()
+                    || entry.getRouteTag() != copy.getRouteTag()
+                    || !entry.getAddress().equals(copy.getAddress())
+                    || !entry.getSubnetMask().equals(copy.getSubnetMask())
+                    || !entry.getNextHop().equals(copy.getNextHop())
+                    || !entry.getEqualCostNeighbors().equals(copy.getEqualCostNeighbors())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static RoutingTableEntry copy(RoutingTableEntry entry, int metric) {
+        RoutingTableEntry copy = new RoutingTableEntry(entry.getAddressFamilyIdentifier()
+                , entry.getRouteTag()
+                , entry.getAddress()
+                , entry.getSubnetMask()
+                , entry.getNextHop()
+                , metric);
+        copy.setNeighbors(entry);
+        return copy;
+    }
+
+    /**
+     * Summarize the given routes
+     * @param routes    the routing table
+     * @param summaries filled with "address/mask" -> summary for each summary made
+     * @return          the routes left as they are, followed by the summaries
+     */
+    private List<RoutingTableEntry> summarize(List<RoutingTableEntry> routes, Map<String, RoutingTableEntry> summaries) {
+        List<RoutingTableEntry> exported = new ArrayList<>();
+        // components grouped by "range index/next hop", each holding prefix -> tag and metric
+        Map<String, Map<Long, Integer>> groups = new LinkedHashMap<>();
+        Map<String, String> groupNextHop = new HashMap<>();
+        Map<String, Integer> groupRange = new HashMap<>();
+        // the neighbors the components of a group were learned from
+        Map<String, Set<String>> groupNeighbors = new HashMap<>();
+
+        for(RoutingTableEntry entry: routes) {
+            int network = Helper.parseIpAddressToInt(entry.getAddress());
+            int prefixLength = Helper.maskToPrefixLength(Helper.parseIpAddressToInt(entry.getSubnetMask()));
+            int rangeIndex = findRange(network, prefixLength);
+            if(rangeIndex < 0 || entry.getMetric() >= RIPPacket.METRIC_UNREACHABLE) {
+                exported.add(entry);
+                continue;
+            }
+            String key = rangeIndex + "/" + entry.getNextHop();
+            Map<Long, Integer> group = groups.computeIfAbsent(key, k -> new HashMap<>());
+            group.merge(toKey(network, prefixLength), (entry.getRouteTag() << 8) | entry.getMetric(), RouteSummarizer::merge);
+            groupNextHop.put(key, entry.getNextHop());
+            groupRange.put(key, rangeIndex);
+            Set<String> neighbors = groupNeighbors.computeIfAbsent(key, k -> new LinkedHashSet<>());
+            if(entry.getNeighbor() != null) {
+                neighbors.add(entry.getNeighbor());
+            }
+            neighbors.addAll(entry.getEqualCostNeighbors());
+        }
+
+        for(Map.Entry<String, Map<Long, Integer>> group: groups.entrySet()) {
+            int rangeLength = summaryRanges.get(groupRange.get(group.getKey()))[1];
+            Map<Long, Integer> merged = aggregate(group.getValue(), rangeLength);
+            for(Map.Entry<Long, Integer> prefix: merged.entrySet()) {
+                int network = (int)(prefix.getKey() >>> 6);
+                int prefixLength = (int)(prefix.getKey() & 0x3F);
+                int tag = prefix.getValue() >>> 8;
+                RoutingTableEntry summary = new RoutingTableEntry(RoutingTableEntry.ADDRESS_FAMILY_IP
+                        , tag == MIXED_TAGS ? RoutingTableEntry.ROUTE_TAG : tag
+                        , Helper.parseIntToIpAddress(network)
+                        , Helper.parseIntToIpAddress(Helper.prefixLengthToMask(prefixLength))
+                        , groupNextHop.get(group.getKey())
+                        , prefix.getValue() & 0xFF);
+                for(String neighbor: groupNeighbors.get(group.getKey())) {
+                    if(summary.getNeighbor() == null) {
+                        summary.setNeighbor(neighbor);
+                    } else {
+                        summary.addEqualCostNeighbor(neighbor);
+                    }
+                }
+                exported.add(summary);
+                summaries.put(summary.getAddress() + "/" + summary.getSubnetMask(), summary);
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * Return the index of the most specific summary range covering the given prefix,
+     * or -1 if the prefix is not covered by any range
+     */
+    private int findRange(int network, int prefixLength) {
+        int best = -1;
+        for(int i = 0; i < summaryRanges.size(); i++) {
+            int[] range = summaryRanges.get(i);
+            if(prefixLength >= range[1]
+                    && (network & Helper.prefixLengthToMask(range[1])) == range[0]
+                    && (best < 0 || range[1] > summaryRanges.get(best)[1])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Merge a set of prefixes into the shortest set of supernets covering exactly the same
+     * addresses, never going shorter than the given minimum prefix length
+     * @param prefixes          prefix key -> tag and metric
+     * @param minPrefixLength   the prefix length of the summary range
+     * @return                  the merged prefix key -> tag and metric
+     */
+    private Map<Long, Integer> aggregate(Map<Long, Integer> prefixes, int minPrefixLength) {
+        // walk the prefixes shortest first and fold any prefix that is already
+        // covered by a shorter one of the same group into the covering prefix
+        List<Long> sorted = new ArrayList<>(prefixes.keySet());
+        sorted.sort((a, b) -> Long.compare(a & 0x3F, b & 0x3F));
+        Map<Long, Integer> result = new HashMap<>();
+        for(Long key: sorted) {
+            int network = (int)(key >>> 6);
+            int prefixLength = (int)(key & 0x3F);
+            boolean isCovered = false;
+            for(int length = minPrefixLength; length < prefixLength && !isCovered; length++) {
+                long coveringKey = toKey(network & Helper.prefixLengthToMask(length), length);
+                if(result.containsKey(coveringKey)) {
+                    result.merge(coveringKey, prefixes.get(key), RouteSummarizer::merge);
+                    isCovered = true;
+                }
+            }
+            if(!isCovered) {
+                result.put(key, prefixes.get(key));
+            }
+        }
+
+        // merge siblings bottom up, a freshly merged parent gets a chance to merge again
+        for(int length = 32; length > minPrefixLength; length--) {
+            List<Long> atThisLength = new ArrayList<>();
+            for(Long key: result.keySet()) {
+                if((key & 0x3F) == length) {
+                    atThisLength.add(key);
+                }
+            }
+            int siblingBit = 1 << (32 - length);
+            for(Long key: atThisLength) {
+                int network = (int)(key >>> 6);
+                Integer metric = result.get(key);
+                Integer siblingMetric = result.get(toKey(network ^ siblingBit, length));
+                if(metric == null || siblingMetric == null) {
+                    continue;
+                }
+                result.remove(key);
+                result.remove(toKey(network ^ siblingBit, length));
+                result.put(toKey(network & ~siblingBit, length - 1), merge(metric, siblingMetric));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge the tags and metrics of two prefixes: the lowest metric, and the tag if both
+     * carry the same one
+     */
+    private static int merge(int a, int b) {
+        int tag = (a >>> 8) == (b >>> 8) ? a >>> 8 : MIXED_TAGS;
+        return (tag << 8) | Math.min(a & 0xFF, b & 0xFF);
+    }
+
+    /**
+     * Pack a prefix into a single map key
+     */
+    private static long toKey(int network, int prefixLength) {
+        return ((network & 0xFFFFFFFFL) << 6) | prefixLength;
+    }
+
+    /***
+     * Benchmark: summarize a large table of contiguous /24s spread over a handful of
+     * next hops and report the reduction in RTEs and bytes per update
+     * @param args  [number of routes] [number of next hops]
+     */
+    public static void main(String[] args) {
+        int routes = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int nextHops = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        List<RoutingTableEntry> table = new ArrayList<>();
+        for(int i = 0; i < routes; i++) {
+            // each next hop owns a contiguous block of networks
+            int nextHop = i / Math.max(1, routes / nextHops);
+            table.add(new RoutingTableEntry(RoutingTableEntry.ADDRESS_FAMILY_IP
+                    , RoutingTableEntry.ROUTE_TAG
+                    , Helper.parseIntToIpAddress((10 << 24) | (i << 8))
+                    , RoutingTableEntry.SUBNET_MASK
+                    , "192.168.0." + (nextHop + 1)
+                    , 1 + (i % 3)));
+        }
+        RouteSummarizer summarizer = new RouteSummarizer(java.util.Collections.singletonList("10.0.0.0/8"));
+        List<RoutingTableEntry> exported = summarizer.summarize(table);
+        int iterations = 200;
+        // every other call sees one metric changed, the others the same table again
+        long changedNanos = 0;
+        long unchangedNanos = 0;
+        for(int i = 0; i < 2 * iterations; i++) {
+            RoutingTableEntry entry = table.get(i / 2 % table.size());
+            if(i % 2 == 0) {
+                entry.setMetric(entry.getMetric() == 1 ? 2 : 1);
+            }
+            long start = System.nanoTime();
+            exported = summarizer.summarize(table);
+            if(i % 2 == 0) {
+                changedNanos += System.nanoTime() - start;
+            } else {
+                unchangedNanos += System.nanoTime() - start;
+            }
+        }
+        System.out.println("routes in table      : " + table.size());
+        System.out.println("RTEs advertised      : " + exported.size());
+        System.out.println("bytes per update     : " + (4 + table.size()*20) + " -> " + (4 + exported.size()*20));
+        System.out.println("summarize() cost (us): " + (changedNanos / iterations / 1000) + " after a change, "
+                + (unchangedNanos / iterations / 1000) + " for an unchanged table");
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * {@link RouterConfig}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single place to read the optional tuning knobs of a rover. The mandatory
+ * arguments (multicast ip, id, port) are still passed on the command line, everything
+ * else is read from java system properties so that it can be supplied as
+ *      java -Drip.summary=10.0.0.0/16 RouterProcess 224.0.0.9 1 4445
+ * or through the 'opts' variable of the Makefile
+ */
+public class RouterConfig {
+    // comma separated list of CIDR ranges to summarize on export
+    public static final String PROPERTY_SUMMARY_RANGES = "rip.summary";
+    // dotted router id used to identify this rover in logs
+    public static final String PROPERTY_ROUTER_ID = "rip.routerId";
+    // comma separated list of CIDR networks attached to this rover
+    public static final String PROPERTY_LOCAL_PREFIXES = "rip.prefixes";
+    // comma separated list of network interfaces the rover talks on, see RouterInterface
+    public static final String PROPERTY_INTERFACES = "rip.interfaces";
+    // maximum number of equal cost next hops kept per destination
+    public static final String PROPERTY_MAX_PATHS = "rip.maxPaths";
+    public static final int DEFAULT_MAX_PATHS = 4;
+    // maximum number of received datagrams waiting to be processed
+    public static final String PROPERTY_INGRESS_CAPACITY = "rip.ingress.capacity";
+    public static final int DEFAULT_INGRESS_CAPACITY = 1024;
+    // what to drop when the ingress queue is full, see IngressQueue
+    public static final String PROPERTY_INGRESS_POLICY = "rip.ingress.policy";
+    // number of sockets (each with its own thread) receiving on the router port
+    public static final String PROPERTY_RECEIVERS = "rip.receivers";
+    // loopback port of the read only query service, off unless set
+    public static final String PROPERTY_QUERY_PORT = "rip.query.port";
+    // ring file capturing the traffic of the rover and its size in MB, see PacketCapture
+    public static final String PROPERTY_CAPTURE = "rip.capture";
+    public static final String PROPERTY_CAPTURE_SIZE = "rip.capture.size";
+    // send the routes poisoned by a neighbor failure right away (default true)
+    public static final String PROPERTY_TRIGGERED_UPDATES = "rip.triggered";
+    // time (ms) between two hello datagrams, off unless set, and the number of hellos
+    // a neighbor may miss before it is declared dead (default 3), see NeighborLiveness
+    public static final String PROPERTY_HELLO_INTERVAL = "rip.hello.interval";
+    public static final String PROPERTY_HELLO_MULTIPLIER = "rip.hello.multiplier";
+    public static final int DEFAULT_HELLO_MULTIPLIER = 3;
+    // file of import and export route policy rules, off unless set, see RoutePolicy
+    public static final String PROPERTY_POLICY = "rip.policy";
+    // route flap damping, see FlapDamping
+    public static final String PROPERTY_DAMPING = "rip.damping";
+    public static final String PROPERTY_DAMPING_HALF_LIFE = "rip.damping.halfLife";
+    public static final String PROPERTY_DAMPING_SUPPRESS = "rip.damping.suppress";
+    public static final String PROPERTY_DAMPING_REUSE = "rip.damping.reuse";
+    public static final String PROPERTY_DAMPING_MAX_SUPPRESS = "rip.damping.maxSuppress";
+
+    /**
+     * Return the configured summary ranges as CIDR strings
+     */
+    public static List<String> getSummaryRanges() {
+        return getList(PROPERTY_SUMMARY_RANGES);
+    }
+
+    /**
+     * Return the configured local networks as CIDR strings
+     */
+    public static List<String> getLocalPrefixes() {
+        return getList(PROPERTY_LOCAL_PREFIXES);
+    }
+
+    /**
+     * Return the names of the configured network interfaces, empty for the default interface
+     */
+    public static List<String> getInterfaces() {
+        return getList(PROPERTY_INTERFACES);
+    }
+
+    /**
+     * Return the maximum number of equal cost next hops per destination, at least 1
+     */
+    public static int getMaxPaths() {
+        return Math.max(1, getInt(PROPERTY_MAX_PATHS, DEFAULT_MAX_PATHS));
+    }
+
+    /**
+     * Return the number of receiving sockets, at least 1
+     */
+    public static int getReceivers() {
+        return Math.max(1, getInt(PROPERTY_RECEIVERS, 1));
+    }
+
+    /**
+     * Return the port of the query service, 0 if it is disabled
+     */
+    public static int getQueryPort() {
+        return Math.max(0, getInt(PROPERTY_QUERY_PORT, 0));
+    }
+
+    /**
+     * Return the time (ms) between two hellos, 0 if hellos are disabled
+     */
+    public static int getHelloInterval() {
+        return Math.max(0, getInt(PROPERTY_HELLO_INTERVAL, 0));
+    }
+
+    /**
+     * Return the number of hellos a neighbor may miss, in [1, 255]
+     */
+    public static int getHelloMultiplier() {
+        return Math.min(255, Math.max(1, getInt(PROPERTY_HELLO_MULTIPLIER, DEFAULT_HELLO_MULTIPLIER)));
+    }
+
+    /**
+     * Return the path of the route policy file, null if there is no policy
+     */
+    public static String getPolicyFile() {
+        String path = System.getProperty(PROPERTY_POLICY);
+        return path == null || path.trim().isEmpty() ? null : path.trim();
+    }
+
+    /**
+     * Return a comma separated system property as a list of trimmed, non empty values
+     * @param property  the name of the property
+     * @return          the values, empty if the property is not set
+     */
+    public static List<String> getList(String property) {
+        List<String> values = new ArrayList<>();
+        String raw = System.getProperty(property);
+        if(raw == null) {
+            return values;
+        }
+        for(String value: raw.split(",")) {
+            if(!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Return a decimal system property or the given default if it is unset
+     */
+    public static double getDouble(String property, double defaultValue) {
+        String raw = System.getProperty(property);
+        if(raw == null || raw.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(raw.trim());
+        } catch (NumberFormatException ex) {
+            Log.router("RouterConfig: ignoring invalid value '" + raw + "' for " + property);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Return an integer system property or the given default if it is unset
+     */
+    public static int getInt(String property, int defaultValue) {
+        String raw = System.getProperty(property);
+        if(raw == null || raw.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(raw.trim());
+        } catch (NumberFormatException ex) {
+            Log.router("RouterConfig: ignoring invalid value '" + raw + "' for " + property);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * {@link RouterInterface}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One network segment the rover is attached to. An interface has its own channel: a
+ * multicast socket that joined the group on this interface only (so it never sees the
+ * datagrams of the other segments) and a socket that sends through this interface. Each
+ * interface runs its own receiving loop, broadcast timer and hello timer, and knows the
+ * neighbors heard on it. The routing table, the ingress queue and its workers are shared,
+ * a route learned on one segment is installed once and advertised on all the others.
+ *
+ * With more than one interface the advertisements of an interface leave out the routes
+ * learned from a neighbor on that same interface (split horizon, RFC 2453 3.4.3): the
+ * neighbors there already know them first hand. A rover with a single interface advertises
+ * its whole table, as it always did.
+ *
+ * Configured with -Drip.interfaces=eth0,eth1, without it the rover runs a single interface
+ * picked by the operating system.
+ */
+public class RouterInterface {
+    public static final String DEFAULT_NAME = "default";
+
+    private final String name;
+    // null for the interface picked by the operating system
+    private final NetworkInterface networkInterface;
+    private final MulticastSocket receiveSocket;
+    private final DatagramSocket sendSocket;
+    private volatile boolean isSplitHorizon = false;
+    // Helper.neighborKey -> the neighbors ("ip:port") heard on this interface
+    private final ConcurrentHashMap<Long, String> neighbors = new ConcurrentHashMap<>();
+    private final Set<String> neighborNames = ConcurrentHashMap.newKeySet();
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder packetsSent = new LongAdder();
+
+    private RouterInterface(String name, NetworkInterface networkInterface, MulticastSocket receiveSocket, DatagramSocket sendSocket) {
+        this.name = name;
+        this.networkInterface = networkInterface;
+        this.receiveSocket = receiveSocket;
+        this.sendSocket = sendSocket;
+    }
+
+    /**
+     * Open the interfaces configured with -Drip.interfaces, or the default interface
+     * @param group     the multicast group of the rovers
+     * @param port      the router port
+     * @param isReusePort true to share the port with the additional receiving sockets (SO_REUSEPORT)
+     * @throws IOException  if an interface does not exist or a socket cannot be opened
+     */
+    public static List<RouterInterface> openAll(InetAddress group, int port, boolean isReusePort) throws IOException {
+        List<RouterInterface> interfaces = new ArrayList<>();
+        List<String> names = RouterConfig.getInterfaces();
+        try {
+            if(names.isEmpty()) {
+                interfaces.add(open(null, group, port, isReusePort));
+            }
+            for(String name: names) {
+                interfaces.add(open(name, group, port, isReusePort));
+            }
+        } catch (IOException ex) {
+            for(RouterInterface routerInterface: interfaces) {
+                routerInterface.close();
+            }
+            throw ex;
+        }
+        for(RouterInterface routerInterface: interfaces) {
+            routerInterface.isSplitHorizon = interfaces.size() > 1;
+        }
+        return interfaces;
+    }
+
+    /**
+     * Open the channel of one interface
+     * @param name  the name of the network interface, null for the one picked by the operating system
+     */
+    private static RouterInterface open(String name, InetAddress group, int port, boolean isReusePort) throws IOException {
+        NetworkInterface networkInterface = null;
+        if(name != null) {
+            networkInterface = NetworkInterface.getByName(name);
+            if(networkInterface == null) {
+                throw new IOException("There is no network interface named '" + name + "'");
+            }
+        }
+        MulticastSocket receiveSocket = new MulticastSocket(null);
+        DatagramSocket sendSocket = null;
+        try {
+            // every interface binds the router port
+            receiveSocket.setReuseAddress(true);
+            if(isReusePort) {
+                // let the kernel spread unicast datagrams over all the receiving sockets
+                receiveSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            receiveSocket.bind(new InetSocketAddress(port));
+            // a null interface leaves the choice to the operating system
+            receiveSocket.joinGroup(new InetSocketAddress(group, port), networkInterface);
+            if(networkInterface == null) {
+                sendSocket = new DatagramSocket();
+            } else {
+                MulticastSocket multicastSocket = new MulticastSocket();
+                multicastSocket.setNetworkInterface(networkInterface);
+                sendSocket = multicastSocket;
+            }
+        } catch (IOException ex) {
+            receiveSocket.close();
+            if(sendSocket != null) {
+                sendSocket.close();
+            }
+            throw ex;
+        }
+        // our own broadcasts are looped back, remember the port to recognise them
+        RoverManager.getInstance().addLocalSenderPort(sendSocket.getLocalPort());
+        return new RouterInterface(name == null ? DEFAULT_NAME : name, networkInterface, receiveSocket, sendSocket);
+    }
+
+    /**
+     * Record the source of a datagram received on this interface, called on the receiving
+     * thread for every datagram
+     */
+    public void onReceive(InetAddress address, int port) {
+        packetsReceived.increment();
+        if(RoverManager.getInstance().isLocalSender(address, port)) {
+            return;
+        }
+        long key = Helper.neighborKey(address, port);
+        if(!neighbors.containsKey(key)) {
+            String neighbor = Helper.parseNeighbor(address, port);
+            neighbors.putIfAbsent(key, neighbor);
+            neighborNames.add(neighbor);
+        }
+    }
+
+    /**
+     * Forget a neighbor that was declared dead
+     * @param neighbor  the neighbor ("ip:port")
+     */
+    public void removeNeighbor(String neighbor) {
+        if(neighborNames.remove(neighbor)) {
+            neighbors.values().remove(neighbor);
+        }
+    }
+
+    public boolean hasNeighbor(String neighbor) {
+        return neighbor != null && neighborNames.contains(neighbor);
+    }
+
+    public Set<String> getNeighbors() {
+        return neighborNames;
+    }
+
+    /**
+     * Return the routes to be advertised on this interface: with split horizon the routes
+     * learned from a neighbor on this interface are left out. The given list is not modified
+     */
+    public List<RoutingTableEntry> filter(List<RoutingTableEntry> routes) {
+        return isSplitHorizon ? filter(routes, neighborNames) : routes;
+    }
+
+    /**
+     * Return the given routes without the ones learned from one of the given neighbors,
+     * the split horizon of an interface that heard them. A route is left out when any of
+     * its equal cost next hops, or for a summary any of its components, was learned there.
+     * The given list is not modified
+     * @param neighbors the neighbors ("ip:port") heard on the interface
+     */
+    public static List<RoutingTableEntry> filter(List<RoutingTableEntry> routes, Set<String> neighbors) {
+        if(neighbors.isEmpty()) {
+            return routes;
+        }
+        List<RoutingTableEntry> advertised = new ArrayList<>(routes.size());
+        for(RoutingTableEntry entry: routes) {
+            if(!isLearnedFrom(entry, neighbors)) {
+                advertised.add(entry);
+            }
+        }
+        return advertised;
+    }
+
+    private static boolean isLearnedFrom(RoutingTableEntry entry, Set<String> neighbors) {
+        if(entry.getNeighbor() != null && neighbors.contains(entry.getNeighbor())) {
+            return true;
+        }
+        for(String neighbor: entry.getEqualCostNeighbors()) {
+            if(neighbors.contains(neighbor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the name of a service of this interface, the default interface keeps the plain name
+     */
+    public String getServiceName(String service) {
+        return isDefault() ? service : service + "-" + name;
+    }
+
+    /**
+     * Return true for the interface picked by the operating system, see -Drip.interfaces
+     */
+    public boolean isDefault() {
+        return networkInterface == null;
+    }
+
+    public void close() {
+        receiveSocket.close();
+        sendSocket.close();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MulticastSocket getReceiveSocket() {
+        return receiveSocket;
+    }
+
+    public DatagramSocket getSendSocket() {
+        return sendSocket;
+    }
+
+    public LongAdder getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public LongAdder getPacketsSent() {
+        return packetsSent;
+    }
+}
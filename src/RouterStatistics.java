@@ -0,0 +1,123 @@
+/**
+ * {@link RouterStatistics}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the packet processing pipeline of a rover. The
+ * counters are cheap to bump from any thread and are read by the
+ * diagnostic tools (see {@link RIPLoadGenerator})
+ */
+public class RouterStatistics {
+    private static final RouterStatistics routerStatistics = new RouterStatistics();
+    // datagrams taken off the socket by the receiving loop
+    private final LongAdder packetsReceived = new LongAdder();
+    // our own datagrams looped back by multicast
+    private final LongAdder packetsFromSelf = new LongAdder();
+    // datagrams fully parsed and applied to the routing table
+    private final LongAdder packetsProcessed = new LongAdder();
+    // datagrams with a bad header or at least one rejected RTE
+    private final LongAdder packetsMalformed = new LongAdder();
+    // datagrams replaced by a newer copy while waiting in the ingress queue
+    private final LongAdder packetsCoalesced = new LongAdder();
+    // datagrams dropped by the overload policy of the ingress queue
+    private final LongAdder packetsDropped = new LongAdder();
+    // routes that went from reachable to unreachable
+    private final LongAdder routeFlaps = new LongAdder();
+    // routes currently suppressed by flap damping
+    private final LongAdder routesSuppressed = new LongAdder();
+    // changes to suppressed routes that did not trigger a table print
+    private final LongAdder updatesDamped = new LongAdder();
+    // reachable RTEs advertised as unreachable because their route was suppressed
+    private final LongAdder routesWithheld = new LongAdder();
+    // hello datagrams from neighbors, handled without touching the routing table
+    private final LongAdder hellosReceived = new LongAdder();
+    // RTEs dropped by the import and by the export policy, see RoutePolicy
+    private final LongAdder routesFilteredIn = new LongAdder();
+    private final LongAdder routesFilteredOut = new LongAdder();
+
+    public static RouterStatistics getInstance() {
+        return routerStatistics;
+    }
+
+    public LongAdder getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public LongAdder getPacketsFromSelf() {
+        return packetsFromSelf;
+    }
+
+    public LongAdder getPacketsProcessed() {
+        return packetsProcessed;
+    }
+
+    public LongAdder getPacketsMalformed() {
+        return packetsMalformed;
+    }
+
+    public LongAdder getPacketsCoalesced() {
+        return packetsCoalesced;
+    }
+
+    public LongAdder getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    public LongAdder getRouteFlaps() {
+        return routeFlaps;
+    }
+
+    public LongAdder getRoutesSuppressed() {
+        return routesSuppressed;
+    }
+
+    public LongAdder getUpdatesDamped() {
+        return updatesDamped;
+    }
+
+    public LongAdder getRoutesWithheld() {
+        return routesWithheld;
+    }
+
+    public LongAdder getHellosReceived() {
+        return hellosReceived;
+    }
+
+    public LongAdder getRoutesFilteredIn() {
+        return routesFilteredIn;
+    }
+
+    public LongAdder getRoutesFilteredOut() {
+        return routesFilteredOut;
+    }
+
+    @Override
+    public String toString() {
+        return "RouterStatistics{" +
+                "packetsReceived=" + packetsReceived.sum() +
+                ", packetsFromSelf=" + packetsFromSelf.sum() +
+                ", packetsProcessed=" + packetsProcessed.sum() +
+                ", packetsMalformed=" + packetsMalformed.sum() +
+                ", packetsCoalesced=" + packetsCoalesced.sum() +
+                ", packetsDropped=" + packetsDropped.sum() +
+                ", routeFlaps=" + routeFlaps.sum() +
+                ", routesSuppressed=" + routesSuppressed.sum() +
+                ", updatesDamped=" + updatesDamped.sum() +
+                ", routesWithheld=" + routesWithheld.sum() +
+                ", hellosReceived=" + hellosReceived.sum() +
+                ", routesFilteredIn=" + routesFilteredIn.sum() +
+                ", routesFilteredOut=" + routesFilteredOut.sum() +
+                '}';
+    }
+}
@@ -16,17 +16,31 @@
  * This is used to obtain an object oriented representation of the RIPPacket RTEs
  */
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 public class RoutingTableEntry {
     public static final int ADDRESS_FAMILY_IP = 2; // 2 for IP
     public static final String SUBNET_MASK = "255.255.255.0"; // 2 for IP
 
     public static final int ROUTE_TAG = 1; // 2 for IP
+    public static final String NEXT_HOP_SELF = "0.0.0.0"; // RFC 2453: route via the originator
     private int addressFamilyIdentifier;
     private int routeTag;
     private String address;
     private String subnetMask;
     private String nextHop;
     private int metric;
+    // the neighbor ("ip:port") this route was learned from, null for local networks
+    private String neighbor;
+    // every neighbor offering this destination at the same metric, the primary one first
+    private List<String> equalCostNeighbors = new CopyOnWriteArrayList<>();
+    // flap damping state, maintained by FlapDamping
+    private double penalty;
+    private long penaltyUpdatedAt;
+    private long suppressedSince = -1;
+    // the immutable copy of this route in the last snapshot, dropped by every change
+    private TableSnapshot.Route snapshotRoute;
 
     public RoutingTableEntry(int addressFamilyIdentifier, int routeTag, String address, String subnetMask, String nextHop, int metric) {
         this.addressFamilyIdentifier = addressFamilyIdentifier;
@@ -45,6 +59,11 @@ public class RoutingTableEntry {
         return routeTag;
     }
 
+    public void setRouteTag(int routeTag) {
+        this.routeTag = routeTag;
+        this.snapshotRoute = null;
+    }
+
     public String getAddress() {
         return address;
     }
@@ -59,14 +78,141 @@ public class RoutingTableEntry {
 
     public void setNextHop(String nextHop) {
         this.nextHop = nextHop;
+        this.snapshotRoute = null;
+    }
+
+    public String getNeighbor() {
+        return neighbor;
+    }
+
+    /**
+     * Make the given neighbor the only next hop of this route
+     * @param neighbor  the neighbor ("ip:port")
+     */
+    public void setNeighbor(String neighbor) {
+        this.neighbor = neighbor;
+        this.snapshotRoute = null;
+        this.equalCostNeighbors.clear();
+        if(neighbor != null) {
+            this.equalCostNeighbors.add(neighbor);
+        }
+    }
+
+    /**
+     * Take over the next hops of the given route, for a copy of it that is advertised in its place
+     * @param entry the route the copy is made of
+     */
+    public void setNeighbors(RoutingTableEntry entry) {
+        setNeighbor(entry.getNeighbor());
+        for(String neighbor: entry.getEqualCostNeighbors()) {
+            addEqualCostNeighbor(neighbor);
+        }
+    }
+
+    public List<String> getEqualCostNeighbors() {
+        return equalCostNeighbors;
+    }
+
+    /**
+     * Add another neighbor offering this route at the same metric
+     * @param neighbor  the neighbor ("ip:port")
+     */
+    public void addEqualCostNeighbor(String neighbor) {
+        if(!equalCostNeighbors.contains(neighbor)) {
+            equalCostNeighbors.add(neighbor);
+            snapshotRoute = null;
+        }
+    }
+
+    /**
+     * Remove a neighbor from the equal cost next hops. If it was the primary next
+     * hop the next remaining neighbor takes over. The last next hop is never removed
+     * @param neighbor  the neighbor ("ip:port")
+     * @return          true if the neighbor was removed
+     */
+    public boolean removeEqualCostNeighbor(String neighbor) {
+        if(equalCostNeighbors.size() < 2 || !equalCostNeighbors.remove(neighbor)) {
+            return false;
+        }
+        snapshotRoute = null;
+        if(neighbor.equalsIgnoreCase(this.neighbor)) {
+            this.neighbor = equalCostNeighbors.get(0);
+            this.nextHop = Helper.parseNeighborAddress(this.neighbor);
+        }
+        return true;
+    }
+
+    /**
+     * Return the next hop for a given flow. The same flow hash always maps to the
+     * same neighbor as long as the set of equal cost neighbors does not change
+     * @param flowHash  the hash of the flow, see {@link Helper#flowHash}
+     * @return          the neighbor ("ip:port") or null for local networks
+     */
+    public String selectNeighbor(int flowHash) {
+        List<String> snapshot = equalCostNeighbors;
+        int size = snapshot.size();
+        if(size == 0) {
+            return neighbor;
+        }
+        try {
+            return snapshot.get(Math.floorMod(flowHash, size));
+        } catch (IndexOutOfBoundsException ex) {
+            // the set shrank under our feet, fall back to the primary
+            return neighbor;
+        }
     }
 
     public int getMetric() {
         return metric;
     }
 
+    /**
+     * Set the metric of this route. A route going from reachable to unreachable
+     * counts as a flap, see {@link FlapDamping}
+     * @param metric    the new metric
+     */
     public void setMetric(int metric) {
+        if(this.metric < RIPPacket.METRIC_UNREACHABLE && metric >= RIPPacket.METRIC_UNREACHABLE) {
+            FlapDamping.getInstance().recordFlap(this);
+        }
         this.metric = metric;
+        this.snapshotRoute = null;
+    }
+
+    public double getPenalty() {
+        return penalty;
+    }
+
+    public void setPenalty(double penalty) {
+        this.penalty = penalty;
+    }
+
+    public long getPenaltyUpdatedAt() {
+        return penaltyUpdatedAt;
+    }
+
+    public void setPenaltyUpdatedAt(long penaltyUpdatedAt) {
+        this.penaltyUpdatedAt = penaltyUpdatedAt;
+    }
+
+    /**
+     * Return the time (ms) this route was suppressed at, -1 if it is not suppressed
+     */
+    public long getSuppressedSince() {
+        return suppressedSince;
+    }
+
+    public void setSuppressedSince(long suppressedSince) {
+        this.suppressedSince = suppressedSince;
+        this.snapshotRoute = null;
+    }
+
+    public TableSnapshot.Route getSnapshotRoute() {
+        return snapshotRoute;
+    }
+
+    public void setSnapshotRoute(TableSnapshot.Route snapshotRoute) {
+        this.snapshotRoute = snapshotRoute;
     }
 
     @Override
@@ -78,6 +224,8 @@ public class RoutingTableEntry {
                 ", subnetMask='" + subnetMask + '\'' +
                 ", nextHop='" + nextHop + '\'' +
                 ", metric=" + metric +
+                ", neighbor='" + neighbor + '\'' +
+                ", equalCostNeighbors=" + equalCostNeighbors +
                 '}';
     }
 }
@@ -11,7 +11,13 @@
  *      ishanguliani aka ig5859
  */
 
-import java.util.HashMap;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The Manager class responsible for driving the core functions
@@ -22,11 +28,19 @@ import java.util.HashMap;
 
 public class RoverManager {
     private String roverId;
+    private String routerId;
+    // networks attached to this rover, advertised with metric 0
+    private List<RoutingTableEntry> localPrefixes = new ArrayList<>();
+    // source ports of the sockets this rover sends from, used to drop our own multicast echo
+    private Set<Integer> localSenderPorts = ConcurrentHashMap.newKeySet();
+    private ConcurrentHashMap<InetAddress, Boolean> localAddressCache = new ConcurrentHashMap<>();
     private MyThreadPoolExecutorService myThreadPoolExecutorService;
     private TimeoutManagementProcess timeoutManagementProcess;
+    private IngressQueue ingressQueue;
+    // the network interfaces the rover talks on, set once they are open
+    private List<RouterInterface> interfaces = new ArrayList<>();
     private RIPPacket mRIPPacket;
     private static RoverManager roverManager = null;
-    private HashMap<String, String> IpAddressMap = new HashMap<>();
 
     public static RoverManager getInstance()    {
         if(roverManager == null)    {
@@ -38,25 +52,104 @@ public class RoverManager {
     public RoverManager() {
         this.mRIPPacket = new RIPPacket();
         this.timeoutManagementProcess = new TimeoutManagementProcess();
+        this.ingressQueue = new IngressQueue(
+                RouterConfig.getInt(RouterConfig.PROPERTY_INGRESS_CAPACITY, RouterConfig.DEFAULT_INGRESS_CAPACITY),
+                System.getProperty(RouterConfig.PROPERTY_INGRESS_POLICY, IngressQueue.POLICY_DROP_NEWEST));
         // initialise the executor service to handle thread effectively
         this.myThreadPoolExecutorService = MyThreadPoolExecutorService.getInstance();
     }
 
-    public HashMap<String, String> getIpAddressMap() {
-        return IpAddressMap;
-    }
-
     public String getRoverId() {
         return roverId;
     }
 
+    /**
+     * Set the rover id given on the command line. The id is either a number in [1, 65535]
+     * or a dotted router id. Unless configured otherwise (-Drip.routerId, -Drip.prefixes)
+     * a numeric id N owns the network 10.(N / 256).(N % 256).0/24, which keeps the
+     * 10.0.N.0/24 networks of the first 255 rovers
+     * @throws IllegalArgumentException if the id is a number outside of [1, 65535]
+     */
     public void setRoverId(String roverId) {
+        // checked before anything is changed, digits only so any length is safe to look at
+        if(roverId.matches("\\d+") && (roverId.length() > 5 || Integer.parseInt(roverId) < 1 || Integer.parseInt(roverId) > 0xFFFF)) {
+            throw new IllegalArgumentException("Invalid rover id '" + roverId + "', expected a number between 1 and 65535");
+        }
         this.roverId = roverId;
+        this.routerId = System.getProperty(RouterConfig.PROPERTY_ROUTER_ID);
+        List<String> prefixes = RouterConfig.getLocalPrefixes();
+        if(prefixes.isEmpty() && roverId.matches("\\d+")) {
+            int id = Integer.parseInt(roverId);
+            prefixes.add(Helper.parseIntToIpAddress((10 << 24) | (id << 8)) + "/24");
+        }
+        localPrefixes = new ArrayList<>();
+        for(String prefix: prefixes) {
+            try {
+                int[] cidr = Helper.parseCIDR(prefix);
+                localPrefixes.add(new RoutingTableEntry(RoutingTableEntry.ADDRESS_FAMILY_IP
+                        , RoutingTableEntry.ROUTE_TAG
+                        , Helper.parseIntToIpAddress(cidr[0])
+                        , Helper.parseIntToIpAddress(Helper.prefixLengthToMask(cidr[1]))
+                        , RoutingTableEntry.NEXT_HOP_SELF
+                        , 0));
+            } catch (IllegalArgumentException ex) {
+                Log.router("RoverManager: ignoring invalid local prefix '" + prefix + "'");
+            }
+        }
+        if(routerId == null) {
+            routerId = localPrefixes.isEmpty() ? roverId : localPrefixes.get(0).getAddress();
+        }
+        mRIPPacket.invalidateSnapshot();
+        mRIPPacket.publishSnapshot();
 //        Log.router("RoverManager: " + "rover id is set to: " + this.roverId);
     }
 
+    /**
+     * Return the identity of this rover used in logs, the configured router id
+     * or else the first local network
+     */
     public String getFullRoverId() {
-        return "10.0." + roverId + ".0";
+        return routerId;
+    }
+
+    public List<RoutingTableEntry> getLocalPrefixes() {
+        return localPrefixes;
+    }
+
+    /**
+     * Return true if the given destination is one of the networks attached to this rover
+     */
+    public boolean isLocalPrefix(String address, String subnetMask) {
+        for(RoutingTableEntry local: localPrefixes) {
+            if(local.getAddress().equalsIgnoreCase(address) && local.getSubnetMask().equalsIgnoreCase(subnetMask)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Register the local port of a socket this rover sends from
+     */
+    public void addLocalSenderPort(int port) {
+        localSenderPorts.add(port);
+    }
+
+    /**
+     * Return true if a datagram with the given source was sent by this rover itself
+     * (multicast is looped back to the sender)
+     */
+    public boolean isLocalSender(InetAddress address, int port) {
+        if(!localSenderPorts.contains(port)) {
+            return false;
+        }
+        return localAddressCache.computeIfAbsent(address, a -> {
+            try {
+                return a.isLoopbackAddress() || a.isAnyLocalAddress() || NetworkInterface.getByInetAddress(a) != null;
+            } catch (SocketException e) {
+                return false;
+            }
+        });
     }
 
     public RIPPacket getmRIPPacket() {
@@ -67,6 +160,36 @@ public class RoverManager {
         return myThreadPoolExecutorService;
     }
 
+    public IngressQueue getIngressQueue() {
+        return ingressQueue;
+    }
+
+    public List<RouterInterface> getInterfaces() {
+        return interfaces;
+    }
+
+    public void setInterfaces(List<RouterInterface> interfaces) {
+        this.interfaces = interfaces;
+        List<String> names = new ArrayList<>();
+        for(RouterInterface routerInterface: interfaces) {
+            names.add(routerInterface.getName());
+        }
+        PacketCapture.getInstance().setInterfaces(names);
+    }
+
+    /**
+     * Return the index of the interface a neighbor was heard on, 0 if none has heard it
+     * @param neighbor  the neighbor ("ip:port")
+     */
+    public int getInterfaceId(String neighbor) {
+        for(int i = 0; i < interfaces.size(); i++) {
+            if(interfaces.get(i).hasNeighbor(neighbor)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
     public TimeoutManagementProcess getTimeoutManagementProcess() {
         return timeoutManagementProcess;
     }
@@ -0,0 +1,126 @@
+/**
+ * {@link ServiceProcess}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+/**
+ * A long running loop of the rover (receiving, broadcasting, timeouts, ingress workers,
+ * queries) as seen by the {@link LifecycleManager} -
+ * 1.   the loop runs in {@link #serve()} for as long as {@link #isRunning()} holds
+ * 2.   {@link #requestStop()} ends the loop: it interrupts the thread running it and calls
+ *      {@link #onStop()} to release whatever the loop blocks on (e.g. close its socket)
+ * 3.   a loop that returns or throws without being asked to stop has failed, the manager
+ *      restarts it if {@link #isRestartable()}
+ * 4.   a service is healthy while it runs and, if it has a maximum idle time, has called
+ *      {@link #heartbeat()} within that time
+ */
+public abstract class ServiceProcess extends Thread {
+    public enum ServiceState { NEW, RUNNING, STOPPED, FAILED }
+
+    private final long maxIdleMillis;
+    private volatile ServiceState serviceState = ServiceState.NEW;
+    private volatile boolean isStopRequested;
+    private volatile Thread runner;
+    private volatile long lastHeartbeat;
+
+    /**
+     * @param serviceName   the name of the service, also the name of the thread when started directly
+     * @param maxIdleMillis the longest time between two heartbeats of a healthy service, 0 for no limit
+     */
+    protected ServiceProcess(String serviceName, long maxIdleMillis) {
+        super(serviceName);
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    @Override
+    public final void run()   {
+        runner = Thread.currentThread();
+        if(isStopRequested) {
+            // asked to stop before it started
+            serviceState = ServiceState.STOPPED;
+            runner = null;
+            return;
+        }
+        serviceState = ServiceState.RUNNING;
+        heartbeat();
+        boolean isFailed = false;
+        try {
+            serve();
+        } catch (Exception ex) {
+            if(!isStopRequested) {
+                isFailed = true;
+                Log.router(RoverManager.getInstance().getFullRoverId() + ": " + getName() + " failed: " + ex);
+            }
+        } finally {
+            runner = null;
+            // a loop that ends on its own has failed as well
+            serviceState = isStopRequested && !isFailed ? ServiceState.STOPPED : ServiceState.FAILED;
+            // do not leak the interrupt into the next task of a pool thread
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * The loop of the service
+     */
+    protected abstract void serve() throws Exception;
+
+    /**
+     * Return true until the service is asked to stop
+     */
+    protected boolean isRunning() {
+        return !isStopRequested && !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Record that the loop made progress
+     */
+    protected void heartbeat() {
+        lastHeartbeat = System.currentTimeMillis();
+    }
+
+    /**
+     * Ask the loop to end. Returns at once, see {@link #getServiceState()}
+     */
+    public void requestStop() {
+        isStopRequested = true;
+        onStop();
+        Thread thread = runner;
+        if(thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Release what the loop may be blocked on, called when a stop is requested
+     */
+    protected void onStop() {
+    }
+
+    /**
+     * Return true if the service can run again after it stopped or failed
+     */
+    public boolean isRestartable() {
+        return true;
+    }
+
+    public ServiceState getServiceState() {
+        return serviceState;
+    }
+
+    /**
+     * Return true if the service runs and its loop is making progress
+     */
+    public boolean isHealthy() {
+        return serviceState == ServiceState.RUNNING
+                && (maxIdleMillis <= 0 || System.currentTimeMillis() - lastHeartbeat <= maxIdleMillis);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * {@link SplitHorizonCheck}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Check of the split horizon of a rover with several interfaces. Routes are learned from
+ * a neighbor N heard on interface A and from a neighbor M heard on interface B, the
+ * exported table (after damping, summarization and export policy) is filtered for each
+ * interface and every route learned from N must be left out on A and sent on B -
+ * 1.   plain:      a /24 learned from N
+ * 2.   policy:     a /24 learned from N, rewritten by an export rule with a tag and offset
+ * 3.   summary:    two /24s learned from N, summarized into a /23 by rip.summary
+ * 4.   ecmp:       a /24 with M as its primary next hop and N as an equal cost one,
+ *                  left out on both interfaces
+ *
+ * EXECUTING:
+ *      java SplitHorizonCheck
+ *      exits with 1 if a route is advertised back on the interface it was learned on
+ */
+public class SplitHorizonCheck {
+    private static final String NEIGHBOR_A = "192.0.2.1:520";
+    private static final String NEIGHBOR_B = "198.51.100.1:520";
+
+    public static void main(String[] args) {
+        System.setProperty(RouterConfig.PROPERTY_SUMMARY_RANGES, "10.2.0.0/16");
+        PrintStream out = BenchSupport.silenceStdout();
+        RoverManager.getInstance().setRoverId("1");
+        RIPPacket table = RoverManager.getInstance().getmRIPPacket();
+        table.setTriggeredUpdateEnabled(false);
+        RoutePolicy.getInstance().setPolicy(RoutePolicy.compile(Collections.singletonList(
+                "export permit 10.1.0.0/16 le 32 offset 1 tag 7")));
+        Set<String> onA = Collections.singleton(NEIGHBOR_A);
+        Set<String> onB = Collections.singleton(NEIGHBOR_B);
+
+        boolean isSound = true;
+        isSound &= check(out, table, "plain", onA, onB, Collections.singletonList(
+                BenchSupport.route((10 << 24) | (0 << 16), 24, NEIGHBOR_A, 1)));
+        isSound &= check(out, table, "policy", onA, onB, Collections.singletonList(
+                BenchSupport.route((10 << 24) | (1 << 16), 24, NEIGHBOR_A, 1)));
+        isSound &= check(out, table, "summary", onA, onB, Arrays.asList(
+                BenchSupport.route((10 << 24) | (2 << 16), 24, NEIGHBOR_A, 1),
+                BenchSupport.route((10 << 24) | (2 << 16) | (1 << 8), 24, NEIGHBOR_A, 1)));
+        RoutingTableEntry ecmp = BenchSupport.route((10 << 24) | (3 << 16), 24, NEIGHBOR_B, 1);
+        ecmp.addEqualCostNeighbor(NEIGHBOR_A);
+        isSound &= check(out, table, "ecmp", onA, onA, Collections.singletonList(ecmp));
+        out.flush();
+        System.exit(isSound ? 0 : 1);
+    }
+
+    /**
+     * Add the routes to the table and check what each interface advertises of them, every
+     * case uses its own networks
+     * @param learnedOn the neighbors of the interface the routes must be left out on
+     * @param otherSide the neighbors of the interface the routes are sent on, the same set
+     *                  when they must be left out on both
+     */
+    private static boolean check(PrintStream out, RIPPacket table, String name, Set<String> learnedOn, Set<String> otherSide, List<RoutingTableEntry> routes) {
+        for(RoutingTableEntry entry: routes) {
+            table.addEntry(entry);
+        }
+        List<RoutingTableEntry> exported = table.getExportedList();
+        int onLearned = count(RouterInterface.filter(exported, learnedOn), routes);
+        int onOther = count(RouterInterface.filter(exported, otherSide), routes);
+        boolean isSound = onLearned == 0 && (learnedOn == otherSide || onOther > 0);
+        out.printf("%-8s routes sent back on the interface they were learned on %d, on the other interface %d  %s%n",
+                name, onLearned, onOther, isSound ? "ok" : "FAILED");
+        return isSound;
+    }
+
+    /**
+     * Return the number of advertised routes covering one of the given routes
+     */
+    private static int count(List<RoutingTableEntry> advertised, List<RoutingTableEntry> routes) {
+        int count = 0;
+        for(RoutingTableEntry entry: advertised) {
+            int network = Helper.parseIpAddressToInt(entry.getAddress());
+            int mask = Helper.parseIpAddressToInt(entry.getSubnetMask());
+            for(RoutingTableEntry route: routes) {
+                if((Helper.parseIpAddressToInt(route.getAddress()) & mask) == network) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+}
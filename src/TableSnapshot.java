@@ -0,0 +1,237 @@
+/**
+ * {@link TableSnapshot}
+ *
+ * @version:
+ *      1.0.1
+ *
+ * @revision:
+ *      1
+ *
+ * @author:
+ *      ishanguliani aka ig5859
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of the routing table as of its last change. The writers copy the routes
+ * they change while they hold the table lock, and publish a new snapshot made of those copies
+ * through a volatile reference once they released it ({@link RIPPacket#publishSnapshot}); the
+ * readers never take a lock -
+ * 1.   routes are kept in table order for dumps. The table only ever grows at its end, so the
+ *      index from "network/prefix length" to the position of a route is shared with the previous
+ *      snapshot and only copied when new destinations were added
+ * 2.   the longest match probes only the prefix lengths that are present in the table
+ * 3.   the immutable copy of a route is kept on its {@link RoutingTableEntry} until the
+ *      route changes, so that a change only copies the routes it touched
+ * 4.   the flap damping state is the one seen when the route was copied, the suppressed
+ *      routes are looked at again on a timer ({@link RIPPacket#refreshSuppressedRoutes})
+ * 5.   a new snapshot copies the route array of the previous one and replaces only the
+ *      changed routes, no other route is looked at
+ */
+public class TableSnapshot {
+    private final long version;
+    private final List<Route> localRoutes;
+    private final Route[] routes;
+    // (prefix length << 32 | network) -> position in routes, never modified once published
+    private final Map<Long, Integer> index;
+    // bit n is set if a reachable route with prefix length n exists, after a partial copy
+    // it may stay set for a length whose routes all became unreachable
+    private long prefixLengths;
+
+    // the snapshot of an empty table, shared by every new table
+    public static final TableSnapshot EMPTY = new TableSnapshot();
+
+    /**
+     * Return an empty snapshot
+     */
+    private TableSnapshot() {
+        this.version = 0;
+        this.localRoutes = Collections.emptyList();
+        this.routes = new Route[0];
+        this.index = new HashMap<>();
+    }
+
+    /**
+     * Return the snapshot following the given one
+     * @param previous      the snapshot published before this one
+     * @param isReset       true if the added routes are the whole table, the routes of the
+     *                      previous snapshot are dropped
+     * @param localRoutes   the networks attached to the rover, null if they did not change
+     * @param added         the routes added at the end of the table, in table order
+     * @param changed       the routes that changed, a later copy of a route replaces an earlier one
+     */
+    public TableSnapshot(TableSnapshot previous, boolean isReset, List<Route> localRoutes, List<Route> added, List<Route> changed) {
+        this.version = previous.version + 1;
+        this.localRoutes = localRoutes == null ? previous.localRoutes : Collections.unmodifiableList(new ArrayList<>(localRoutes));
+        Route[] base = isReset ? EMPTY.routes : previous.routes;
+        this.routes = Arrays.copyOf(base, base.length + added.size());
+        this.prefixLengths = isReset ? 0 : previous.prefixLengths;
+        Map<Long, Integer> baseIndex = isReset ? EMPTY.index : previous.index;
+        this.index = added.isEmpty() ? baseIndex : new HashMap<>(baseIndex);
+        for(int i = base.length; i < routes.length; i++) {
+            routes[i] = added.get(i - base.length);
+            index.put(key(routes[i].network, routes[i].prefixLength), i);
+            add(routes[i]);
+        }
+        for(Route route: changed) {
+            Integer position = index.get(key(route.network, route.prefixLength));
+            if(position != null) {
+                routes[position] = route;
+                add(route);
+            }
+        }
+    }
+
+    /**
+     * Return the copy of a route, shared with the previous snapshots until the route changes.
+     * The caller holds the lock of the table
+     */
+    public static Route toRoute(RoutingTableEntry entry) {
+        // only a suppressed route needs its penalty decayed, it may be reused by now
+        boolean isSuppressed = entry.getSuppressedSince() >= 0 && FlapDamping.getInstance().isSuppressed(entry);
+        Route route = entry.getSnapshotRoute();
+        if(route == null) {
+            route = new Route(entry, isSuppressed);
+            entry.setSnapshotRoute(route);
+        }
+        return route;
+    }
+
+    /**
+     * Account for a route copied into this snapshot
+     */
+    private void add(Route route) {
+        if(route.isUsable()) {
+            prefixLengths |= 1L << route.prefixLength;
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Route> getLocalRoutes() {
+        return localRoutes;
+    }
+
+    public List<Route> getRoutes() {
+        return Collections.unmodifiableList(Arrays.asList(routes));
+    }
+
+    /**
+     * Return the number of routes using each neighbor ("ip:port") as a next hop
+     */
+    public Map<String, Integer> getRoutesPerNeighbor() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for(Route route: routes) {
+            for(String neighbor: route.nextHops) {
+                counts.merge(neighbor, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Return the route for exactly the given network, null if there is none
+     * @param network       the network address as an int
+     * @param prefixLength  the prefix length
+     */
+    public Route get(int network, int prefixLength) {
+        for(Route local: localRoutes) {
+            if(local.network == network && local.prefixLength == prefixLength) {
+                return local;
+            }
+        }
+        Integer position = index.get(key(network, prefixLength));
+        return position == null ? null : routes[position];
+    }
+
+    /**
+     * Return the route used to forward to the given address, the same choice as
+     * {@link RIPPacket#selectNextHop}: a local network first, then the longest
+     * matching reachable route that is not suppressed
+     * @param address   the destination address as an int
+     * @return          the route or null if the destination is unreachable
+     */
+    public Route lookup(int address) {
+        for(Route local: localRoutes) {
+            if((address & local.mask) == local.network) {
+                return local;
+            }
+        }
+        long lengths = prefixLengths;
+        while(lengths != 0) {
+            int prefixLength = 63 - Long.numberOfLeadingZeros(lengths);
+            lengths &= ~(1L << prefixLength);
+            Integer position = index.get(key(address & Helper.prefixLengthToMask(prefixLength), prefixLength));
+            if(position != null && routes[position].isUsable()) {
+                return routes[position];
+            }
+        }
+        return null;
+    }
+
+    private static long key(int network, int prefixLength) {
+        return ((long)prefixLength << 32) | (network & 0xFFFFFFFFL);
+    }
+
+    /**
+     * One route of a snapshot
+     */
+    public static class Route {
+        private final int network;
+        private final int mask;
+        private final int prefixLength;
+        private final String address;
+        private final String nextHop;
+        // the equal cost neighbors ("ip:port"), the primary one first, empty for local networks
+        private final List<String> nextHops;
+        private final int metric;
+        private final boolean isSuppressed;
+
+        private Route(RoutingTableEntry entry, boolean isSuppressed) {
+            this.network = Helper.parseIpAddressToInt(entry.getAddress());
+            this.mask = Helper.parseIpAddressToInt(entry.getSubnetMask());
+            this.prefixLength = Helper.maskToPrefixLength(mask);
+            this.address = entry.getAddress();
+            this.nextHop = entry.getNextHop();
+            this.nextHops = Collections.unmodifiableList(new ArrayList<>(entry.getEqualCostNeighbors()));
+            this.metric = entry.getMetric();
+            this.isSuppressed = isSuppressed;
+        }
+
+        public String getCIDR() {
+            return address + "/" + prefixLength;
+        }
+
+        public String getNextHop() {
+            return nextHop;
+        }
+
+        public List<String> getNextHops() {
+            return nextHops;
+        }
+
+        public int getMetric() {
+            return metric;
+        }
+
+        public boolean isSuppressed() {
+            return isSuppressed;
+        }
+
+        /**
+         * Return true if this route can be used for forwarding
+         */
+        public boolean isUsable() {
+            return metric < RIPPacket.METRIC_UNREACHABLE && !isSuppressed;
+        }
+    }
+}